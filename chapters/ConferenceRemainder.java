@@ -1,12 +1,29 @@
 package com.sap.datetime.remainder;
+import java.io.PrintStream;
 import java.time.*;
 import java.time.format.DateTimeFormatter;
-import java.time.temporal.ChronoField;
 import java.time.temporal.ChronoUnit;
 import java.time.temporal.TemporalAdjusters;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 
+/**
+ * Weekly meeting remainder, shown every Monday fifteen minutes before the meeting until the conference.
+ * <p>
+ * The remainder is event driven: the time of the next remainder is computed directly with {@link TemporalAdjusters},
+ * and the remainder either waits for it on a {@link ScheduledExecutorService} ({@link #startRemainder()}) or jumps
+ * straight to it ({@link #simulateRemainder()}). The current time is taken from the {@link Clock} given to the
+ * remainder, so a fixed clock gives a deterministic run.
+ */
 public class ConferenceRemainder  {	
+
+	/**
+	 * The remainder is shown this long before the meeting
+	 */
+	private static final Duration REMAINDER_BEFORE_MEETING = Duration.ofMinutes(15);
    	  
    /**
 	* Date of the technical conference   
@@ -15,10 +32,18 @@ public class ConferenceRemainder  {
 		
 	private ZonedDateTime startMeetingDateAndTime ;
 	
+	/**
+	 * Set when the remainder of the last meeting before the conference has been shown
+	 */
+	private boolean lastRemainderShown;
+
 	int startMeetingHours , startMeetingMinutes;
 		
 	private ZoneId zoneIdOfCurrentLocation;
 	
+	private final Clock clock;
+
+	private final PrintStream out;
 	
 	
 	/**
@@ -29,39 +54,54 @@ public class ConferenceRemainder  {
 	 * @param startMeetingMinutes
 	 */
 	public ConferenceRemainder( ZoneId zoneIdOfCurrentLocation ,int startMeetingHours , int startMeetingMinutes ){
-			this.zoneIdOfCurrentLocation = zoneIdOfCurrentLocation;
-			conferenceDateAndTime = ZonedDateTime.of(2015, 6, 20, 11, 15, 00, 00, zoneIdOfCurrentLocation);	
+			this(Clock.system(zoneIdOfCurrentLocation), startMeetingHours, startMeetingMinutes);
+	}
+
+	/**
+	 * Initialize the conference remainder with a clock in the zone of the team's location.
+	 * @param clock - source of the current time, a fixed clock makes the remainder deterministic
+	 * @param startMeetingHours
+	 * @param startMeetingMinutes
+	 */
+	public ConferenceRemainder( Clock clock ,int startMeetingHours , int startMeetingMinutes ){
+			this(clock, ZonedDateTime.of(2015, 6, 20, 11, 15, 00, 00, clock.getZone()), startMeetingHours, startMeetingMinutes, System.out);
+	}
+
+	/**
+	 * Initialize the conference remainder for any conference.
+	 * @param clock - source of the current time, in the zone of the team's location
+	 * @param conferenceDateAndTime - the remainder stops at the last meeting before it
+	 * @param startMeetingHours
+	 * @param startMeetingMinutes
+	 * @param out - where the remainders are printed
+	 */
+	public ConferenceRemainder( Clock clock, ZonedDateTime conferenceDateAndTime, int startMeetingHours , int startMeetingMinutes, PrintStream out ){
+			this.clock = clock;
+			this.zoneIdOfCurrentLocation = clock.getZone();
+			this.conferenceDateAndTime = conferenceDateAndTime.withZoneSameInstant(zoneIdOfCurrentLocation);
 			this.startMeetingHours = startMeetingHours;
 			this.startMeetingMinutes = startMeetingMinutes;
-			
+			this.out = out;
 	}
 	
 	
 	
 	
 	/**
-	 * Initialize start meeting date time to the current Monday ( if today is Monday, before the meeting time ) or to the next Monday if the meeting time for 
-	 * today is  already gone. 
+	 * Initialize start meeting date time to the current Monday ( if today is Monday and its remainder time is not gone yet ) or to the next Monday.
 	 */
 	private void initStartMeetingDateAndTime() {
-		ZonedDateTime monday= null;
-		// check if today is Monday 
-		if(DayOfWeek.MONDAY.getValue() == currentDateAndTime.get(ChronoField.DAY_OF_WEEK) &&
-			currentDateAndTime.get(ChronoField.HOUR_OF_DAY) <= startMeetingHours && 
-			currentDateAndTime.get(ChronoField.MINUTE_OF_HOUR) < startMeetingMinutes ) { 
-			
-			monday = currentDateAndTime.with(TemporalAdjusters.nextOrSame(DayOfWeek.MONDAY)); 
-		}else {	
-			// The meeting time is already gone. Start meeting time should be the next Monday
-			monday = currentDateAndTime.with(TemporalAdjusters.next(DayOfWeek.MONDAY)); 
+		ZonedDateTime monday = atStartMeetingTime(currentDateAndTime.with(TemporalAdjusters.nextOrSame(DayOfWeek.MONDAY)));
+		if (monday.minus(REMAINDER_BEFORE_MEETING).isBefore(currentDateAndTime)) {
+			// The remainder time for today is already gone. Start meeting time should be the next Monday
+			monday = atStartMeetingTime(currentDateAndTime.with(TemporalAdjusters.next(DayOfWeek.MONDAY)));
 		}
 		
-		
 		//if the "monday" is before the conference date, then set it for start meeting date
 		setStartMeetingDateAndTime( monday );
 		
-		System.out.println( "initStartMeetingTime: Curreint time is: " + currentDateAndTime);
-		System.out.println( "startMeetingTime is: " + startMeetingDateAndTime);
+		out.println( "initStartMeetingTime: Curreint time is: " + currentDateAndTime);
+		out.println( "startMeetingTime is: " + startMeetingDateAndTime);
 		
 	}
 
@@ -70,13 +110,13 @@ public class ConferenceRemainder  {
 	 */
 	private void setNextStartMeetingDateAndTime() {		
 		//To use a TemporalAdjuster use the "with" method. This method returns an adjusted copy of the date-time. 
-		ZonedDateTime nextMonday=  currentDateAndTime.with(TemporalAdjusters.next(DayOfWeek.MONDAY));
+		ZonedDateTime nextMonday = atStartMeetingTime(startMeetingDateAndTime.with(TemporalAdjusters.next(DayOfWeek.MONDAY)));
 		//if the "nextMonday" is before the conference date, then set it for start meeting date
-		setStartMeetingDateAndTime( nextMonday );		
+		lastRemainderShown = !setStartMeetingDateAndTime( nextMonday );
 		
-		System.out.println( "****************************************************************************");
-		System.out.println( "Next start meeting time is on : " + startMeetingDateAndTime.format(formatter));
-		System.out.println( "****************************************************************************");
+		out.println( "****************************************************************************");
+		out.println( "Next start meeting time is on : " + startMeetingDateAndTime.format(formatter));
+		out.println( "****************************************************************************");
 	}
 	
 	
@@ -84,39 +124,43 @@ public class ConferenceRemainder  {
 	 * The remainder is active until the last Monday, before the conference data, that's why the start meeting date and time is set only if the "monday" 
 	 * date is before the conference date.
 	 * @param monday 
+	 * @return if the start meeting date and time is set
 	 */
-	private void setStartMeetingDateAndTime( ZonedDateTime monday ){
+	private boolean setStartMeetingDateAndTime( ZonedDateTime monday ){
 		// start meeting date and time is not set if date of 'moday' is after the conference date
 		if( monday.isBefore(conferenceDateAndTime)) {
-			startMeetingDateAndTime = ZonedDateTime.ofInstant(monday.toInstant(), currentDateAndTime.getZone()); 
-			// add the start meting time to the start meeting date
-			addStartMeetingTimeToStartMeetingDate ();
+			startMeetingDateAndTime = monday;
+			return true;
 		}
+		return false;
 	}
 	
 	/**
 	 * Set start meeting time to the start meeting date
 	 * @param monday
 	 */
-	private void addStartMeetingTimeToStartMeetingDate(){			    
-		    startMeetingDateAndTime = startMeetingDateAndTime.withHour(startMeetingHours);
-		    startMeetingDateAndTime = startMeetingDateAndTime.withMinute(startMeetingMinutes);		
+	private ZonedDateTime atStartMeetingTime( ZonedDateTime monday ){
+		    return monday.with(LocalTime.of(startMeetingHours, startMeetingMinutes));
 	}	
 	
 	DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd.MM.yyyy hh:mm:ss VV");	
 	private void showRemainder( ){
 		    
 		    //print the remainder message with information about the current date and time in the corresponding time zone
-			System.out.println( "\nToday is : "+ currentDateAndTime.getDayOfWeek().name()+ " - " + currentDateAndTime.format(formatter) );
-			System.out.println("There are 15 minutes to the meeting : ");
+			out.println( "\nToday is : "+ currentDateAndTime.getDayOfWeek().name()+ " - " + currentDateAndTime.format(formatter) );
+			out.println("There are 15 minutes to the meeting : ");
 			
 			// print details for the meeting which include the type of the meeting and start meeting time			 
-			 System.out.println("This is monthly meeting remainder which is displayed every Monday fifteen minutes before: "+ 
+			 out.println("This is monthly meeting remainder which is displayed every Monday fifteen minutes before: "+
 		    		                                   startMeetingDateAndTime.format(DateTimeFormatter.ofPattern("hh:mm VV")) );			  
-		    System.out.println("_________________________________________________________________________________________________\n \n");
+		    out.println("_________________________________________________________________________________________________\n \n");
 	}
 	
-	
+	private void stopRemainder(){
+			out.println( "The conference date is on " + conferenceDateAndTime.format(formatter) );
+			out.println( "Now is : "+ currentDateAndTime.format(formatter)  );
+			out.println( "The last meeting date before the conference is reached. Remainder is stopped.");
+	}
 	
 	
 	
@@ -125,53 +169,103 @@ public class ConferenceRemainder  {
 	
 	private ZonedDateTime currentDateAndTime;	
 	
-	public void startRemainder(){	
-		
-		//Initialize the clock with the current time with the corresponding time zone of the team's location
-		Clock currentTimeClock = Clock.system(zoneIdOfCurrentLocation);
-		currentDateAndTime = ZonedDateTime.now( currentTimeClock );
-		System.out.println( "Weekly meeting. It runs every Monday.");
-		System.out.println( "Started at : " + currentDateAndTime +" "+ currentDateAndTime.getZone());
+	/**
+	 * Starts the remainder at the current time of the clock.
+	 * @return the time of the first event, or null if there is no meeting before the conference
+	 */
+	ZonedDateTime initRemainder(){
+		currentDateAndTime = ZonedDateTime.now( clock ).truncatedTo(ChronoUnit.MINUTES);
+		out.println( "Weekly meeting. It runs every Monday.");
+		out.println( "Started at : " + currentDateAndTime +" "+ currentDateAndTime.getZone());
 		
 		// initialize the start meeting date and time with the date of the first "Monday" 
 		initStartMeetingDateAndTime();
+		if( startMeetingDateAndTime == null ){
+			stopRemainder();
+			return null;
+		}
+		return startMeetingDateAndTime.minus(REMAINDER_BEFORE_MEETING);
+	}
 		
-		boolean running = true;
-		while( running ){
-			//Check if the remainder is still valid; Start meeting date and time is set until the last "Monday" before the conference date
-			if( currentDateAndTime.isBefore(startMeetingDateAndTime)){
-				
-				//check if current date and time is 15 minutes before the meeting
-				if(currentDateAndTime.until(startMeetingDateAndTime, ChronoUnit.MINUTES) == 15 ){
-					showRemainder( );
-					setNextStartMeetingDateAndTime();
+	/**
+	 * Handles the event at the given time: shows the remainder, or stops the remainder once the last meeting before the conference has started.
+	 * @return the time of the next event, or null if the remainder is stopped
+	 */
+	ZonedDateTime fire( ZonedDateTime now ){
+		currentDateAndTime = now;
+		//Stop the remainder, the last "Monday" before the conference date is reached
+		if( lastRemainderShown ){
+			stopRemainder();
+			return null;
+		}
+		
+		showRemainder( );
+		setNextStartMeetingDateAndTime();
+		// After the last remainder the next event is the start of the last meeting, when the remainder is stopped
+		return lastRemainderShown ? startMeetingDateAndTime : startMeetingDateAndTime.minus(REMAINDER_BEFORE_MEETING);
+	}
+
+	/**
+	 * Runs the remainder in real time and waits until it is stopped.
+	 */
+	public void startRemainder(){
+		ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+		try {
+			startRemainder(scheduler).join();
+		} finally {
+			scheduler.shutdownNow();
+		}
+	}
+
+	/**
+	 * Schedules the remainders on the scheduler, every remainder schedules the next one.
+	 * @return completed when the remainder is stopped
+	 */
+	public CompletableFuture<Void> startRemainder( ScheduledExecutorService scheduler ){
+		CompletableFuture<Void> stopped = new CompletableFuture<>();
+		schedule(scheduler, initRemainder(), stopped);
+		return stopped;
+	}
+
+	private void schedule( ScheduledExecutorService scheduler, ZonedDateTime event, CompletableFuture<Void> stopped ){
+		if( event == null ){
+			stopped.complete(null);
+			return;
+		}
+		long delay = Math.max(0, Duration.between(clock.instant(), event.toInstant()).toMillis());
+		scheduler.schedule(() -> {
+			try {
+				// Woken too early, for example after the system time was changed. Wait again for the same event
+				if( clock.instant().isBefore(event.toInstant()) ){
+					schedule(scheduler, event, stopped);
+				} else {
+					schedule(scheduler, fire(event), stopped);
 				}
-			
-			//Stop the remainder, the last "Monday" before the conference date is reached
-			}else{				
-				
-				System.out.println( "The conference date is on " + conferenceDateAndTime.format(formatter) );
-				System.out.println( "Now is : "+ currentDateAndTime.format(formatter)  );
-				System.out.println( "The last meeting date before the conference is reached. Remainder is stopped.");				
-				running = false;
+			} catch (RuntimeException e) {
+				stopped.completeExceptionally(e);
 			}
-			
-			// Move the current time with one minutes. This simulate f time.
-			currentTimeClock = Clock.fixed(currentTimeClock.instant().plus(1, ChronoUnit.MINUTES), currentDateAndTime.getZone());
-			currentDateAndTime = ZonedDateTime.now( currentTimeClock );
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Runs the remainder without waiting: the time jumps from one event to the next one, starting from the current time of the clock.
+	 */
+	public void simulateRemainder(){
+		ZonedDateTime event = initRemainder();
+		while( event != null ){
+			event = fire(event);
 		}
-		
 	}
 
 
 	public static void main(String[] args) {
 		ConferenceRemainder conferenceRemainderBulgaria = new ConferenceRemainder(ZoneId.of("Europe/Sofia"), 18, 30);		
-		conferenceRemainderBulgaria.startRemainder();
+		conferenceRemainderBulgaria.simulateRemainder();
 		
 		System.out.println("######################################################################################################");
 		
 		ConferenceRemainder conferenceRemainderAfrica = new ConferenceRemainder(ZoneId.of("Africa/Johannesburg"), 10, 30);
-		conferenceRemainderAfrica.startRemainder();
+		conferenceRemainderAfrica.simulateRemainder();
 
 	}
 
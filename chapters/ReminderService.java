@@ -0,0 +1,320 @@
+package com.sap.datetime.remainder;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.*;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ * Runs many {@link ConferenceRemainder}s together. The next event of every remainder is kept in a single priority queue
+ * ordered by the time of the event; one dispatcher thread waits for the earliest event and hands it to a small pool
+ * of workers, which fire the remainder and put its next event back into the queue.
+ * <p>
+ * A remainder has at most one event in the queue, so it is never fired by two workers at the same time. The delay
+ * between the time of an event and the moment a worker fires it, measured with the clock of the service, is reported
+ * by {@link #getLagStatistics()}.
+ */
+public class ReminderService implements AutoCloseable {
+
+	private final Clock clock;
+	private final long maxWaitNanos;
+	private final ExecutorService workers;
+	private final Thread dispatcher;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition changed = lock.newCondition();
+	private final PriorityQueue<Event> events = new PriorityQueue<>();
+	private long sequence;
+	private volatile boolean closed;
+
+	private final AtomicInteger active = new AtomicInteger();
+	private final LongAdder fired = new LongAdder();
+	private final LongAdder totalLagMicros = new LongAdder();
+	private final LongAccumulator maxLagMicros = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * @param clock - the clock the events are waited for with
+	 * @param threads - the number of workers that fire the remainders
+	 */
+	public ReminderService( Clock clock, int threads ){
+		this(clock, threads, Duration.ofSeconds(1));
+	}
+
+	/**
+	 * @param maxWait - the dispatcher checks the clock again at least this often, so that changes of the system time
+	 * or clocks that do not run at the real speed are noticed
+	 */
+	public ReminderService( Clock clock, int threads, Duration maxWait ){
+		this.clock = clock;
+		this.maxWaitNanos = maxWait.toNanos();
+		this.workers = Executors.newFixedThreadPool(threads);
+		this.dispatcher = new Thread(this::dispatch, "reminder-dispatcher");
+		this.dispatcher.setDaemon(true);
+		this.dispatcher.start();
+	}
+
+	/**
+	 * Starts the remainder and queues its first event.
+	 */
+	public void register( ConferenceRemainder remainder ){
+		ZonedDateTime first = remainder.initRemainder();
+		if( first != null ){
+			active.incrementAndGet();
+			enqueue(remainder, first);
+		}
+	}
+
+	/**
+	 * @return the number of remainders that are not stopped yet
+	 */
+	public int getActiveRemainders(){
+		return active.get();
+	}
+
+	public LagStatistics getLagStatistics(){
+		return new LagStatistics(fired.sum(), totalLagMicros.sum(), maxLagMicros.get());
+	}
+
+	/**
+	 * Waits until all the registered remainders are stopped.
+	 * @return false if the timeout elapsed before that
+	 */
+	public boolean awaitStopped( long timeout, TimeUnit unit ) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		lock.lock();
+		try {
+			while( active.get() > 0 ){
+				long remaining = deadline - System.nanoTime();
+				if( remaining <= 0 ){
+					return false;
+				}
+				changed.awaitNanos(remaining);
+			}
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void close(){
+		lock.lock();
+		try {
+			closed = true;
+			changed.signalAll();
+		} finally {
+			lock.unlock();
+		}
+		workers.shutdownNow();
+	}
+
+	private void enqueue( ConferenceRemainder remainder, ZonedDateTime time ){
+		lock.lock();
+		try {
+			Event event = new Event(remainder, time, sequence++);
+			events.add(event);
+			// The dispatcher only has to wake up when it waits for a later event
+			if( events.peek() == event ){
+				changed.signalAll();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void dispatch(){
+		while( true ){
+			Event event;
+			lock.lock();
+			try {
+				while( true ){
+					if( closed ){
+						return;
+					}
+					Event head = events.peek();
+					if( head == null ){
+						changed.awaitUninterruptibly();
+						continue;
+					}
+					long delayNanos = Duration.between(clock.instant(), head.instant).toNanos();
+					if( delayNanos <= 0 ){
+						event = events.poll();
+						break;
+					}
+					// Woken by an earlier event, by close or when the delay elapses
+					changed.awaitNanos(Math.min(delayNanos, maxWaitNanos));
+				}
+			} catch (InterruptedException e) {
+				return;
+			} finally {
+				lock.unlock();
+			}
+			// close() may shut the workers down after the event was taken
+			if( closed ){
+				return;
+			}
+			try {
+				workers.execute(() -> fire(event));
+			} catch (RejectedExecutionException e) {
+				return;
+			}
+		}
+	}
+
+	private void fire( Event event ){
+		long lagMicros = Math.max(0, Duration.between(event.instant, clock.instant()).toNanos() / 1000);
+		fired.increment();
+		totalLagMicros.add(lagMicros);
+		maxLagMicros.accumulate(lagMicros);
+
+		ZonedDateTime next = null;
+		try {
+			next = event.remainder.fire(event.time);
+		} finally {
+			if( next != null ){
+				enqueue(event.remainder, next);
+			} else if( active.decrementAndGet() == 0 ){
+				lock.lock();
+				try {
+					changed.signalAll();
+				} finally {
+					lock.unlock();
+				}
+			}
+		}
+	}
+
+	private static class Event implements Comparable<Event> {
+		final ConferenceRemainder remainder;
+		final ZonedDateTime time;
+		final Instant instant;
+		// Events at the same instant are fired in the order they were queued
+		final long sequence;
+
+		Event( ConferenceRemainder remainder, ZonedDateTime time, long sequence ){
+			this.remainder = remainder;
+			this.time = time;
+			this.instant = time.toInstant();
+			this.sequence = sequence;
+		}
+
+		@Override
+		public int compareTo( Event other ){
+			int result = instant.compareTo(other.instant);
+			return result != 0 ? result : Long.compare(sequence, other.sequence);
+		}
+	}
+
+	/**
+	 * Delay between the time of the events and the moment they were fired.
+	 */
+	public static class LagStatistics {
+		private final long fired;
+		private final long totalLagMicros;
+		private final long maxLagMicros;
+
+		LagStatistics( long fired, long totalLagMicros, long maxLagMicros ){
+			this.fired = fired;
+			this.totalLagMicros = totalLagMicros;
+			this.maxLagMicros = maxLagMicros;
+		}
+
+		public long getFired(){
+			return fired;
+		}
+
+		public double getAverageLagMillis(){
+			return fired == 0 ? 0 : totalLagMicros / 1000.0 / fired;
+		}
+
+		public double getMaxLagMillis(){
+			return maxLagMicros / 1000.0;
+		}
+
+		@Override
+		public String toString(){
+			return String.format("%d remainders fired, lag average %.3f ms, max %.3f ms", fired, getAverageLagMillis(),
+					getMaxLagMillis());
+		}
+	}
+
+
+	/**
+	 * Registers remainders for teams all over the world, with the Monday meetings at random times of the day and the
+	 * conference one to four weeks later. The clock runs 10000 times faster than the real one, so a week passes in a minute and the lag is
+	 * 10000 times bigger than the real one.
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		int teams = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+		Instant start = Instant.now();
+		Clock clock = new AcceleratedClock(start, 10000, ZoneOffset.UTC);
+		PrintStream discard = new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+		});
+		Object[] zones = ZoneId.getAvailableZoneIds().toArray();
+		Random random = new Random(42);
+
+		try (ReminderService service = new ReminderService(clock, 4, Duration.ofMillis(1))) {
+			for (int i = 0; i < teams; i++) {
+				ZoneId zone = ZoneId.of((String) zones[random.nextInt(zones.length)]);
+				ZonedDateTime meeting = ZonedDateTime.now(clock.withZone(zone)).plusMinutes(16 + random.nextInt(7 * 24 * 60));
+				ZonedDateTime conference = meeting.plusWeeks(1 + random.nextInt(4));
+				service.register(new ConferenceRemainder(clock.withZone(zone), conference, meeting.getHour(),
+						meeting.getMinute(), discard));
+			}
+			System.out.println(teams + " remainders registered");
+			while (!service.awaitStopped(10, TimeUnit.SECONDS)) {
+				System.out.println(service.getActiveRemainders() + " active, " + service.getLagStatistics());
+			}
+			System.out.println("All stopped, " + service.getLagStatistics());
+		}
+	}
+
+	/**
+	 * Clock that runs faster than the real time, from the given start.
+	 */
+	private static class AcceleratedClock extends Clock {
+		private final Instant start;
+		private final long startNanos;
+		private final long speed;
+		private final ZoneId zone;
+
+		AcceleratedClock( Instant start, long speed, ZoneId zone ){
+			this(start, System.nanoTime(), speed, zone);
+		}
+
+		private AcceleratedClock( Instant start, long startNanos, long speed, ZoneId zone ){
+			this.start = start;
+			this.startNanos = startNanos;
+			this.speed = speed;
+			this.zone = zone;
+		}
+
+		@Override
+		public ZoneId getZone(){
+			return zone;
+		}
+
+		@Override
+		public Clock withZone( ZoneId zone ){
+			return new AcceleratedClock(start, startNanos, speed, zone);
+		}
+
+		@Override
+		public Instant instant(){
+			return start.plusNanos((System.nanoTime() - startNanos) * speed);
+		}
+	}
+}
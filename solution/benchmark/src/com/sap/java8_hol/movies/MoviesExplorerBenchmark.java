@@ -0,0 +1,334 @@
+package com.sap.java8_hol.movies;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Compares the imperative (Old), the stream and the parallel stream versions of the MoviesExplorer queries, together
+ * with the index based ones, on synthetic catalogs of growing size.
+ * <p>
+ * Every operation is warmed up and then run repeatedly for a fixed time. The report shows the throughput, the latency
+ * percentiles of a single run and the allocation rate, measured with the per-thread allocation counters of the JVM
+ * (the same counters the GC profiler of JMH reads).
+ * <pre>
+ * java -Xmx8g -Dbenchmark.warmup=1 -Dbenchmark.time=3 com.sap.java8_hol.movies.MoviesExplorerBenchmark 10000,100000
+ * </pre>
+ * The default sizes are 10K, 100K, 1M and 10M movies; the 10M catalog needs several gigabytes of heap.
+ * <p>
+ * The {@link ParallelQueries} are measured on pools of 1, 2, 4 and so on up to {@code -Dbenchmark.maxParallelism}
+ * threads (64 by default), the variants are named after the parallelism; pools larger than the number of processors
+ * show the cost of oversubscription.
+ * <p>
+ * The allocation counters belong to threads and disappear with them, so the pools of the benchmarked code live as
+ * long as the benchmark: the loaders share one pool, and the queries get one pool per parallelism.
+ */
+public class MoviesExplorerBenchmark {
+
+    private static final long WARMUP_NANOS = TimeUnit.SECONDS.toNanos(Long.getLong("benchmark.warmup", 1));
+    private static final long MEASUREMENT_NANOS = TimeUnit.SECONDS.toNanos(Long.getLong("benchmark.time", 2));
+    private static final int MIN_ITERATIONS = 5;
+    private static final int MAX_PARALLELISM = Integer.getInteger("benchmark.maxParallelism", 64);
+
+    private static final PrintStream CONSOLE = System.out;
+    private static final PrintStream NULL_OUTPUT = new PrintStream(new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    });
+
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private static final int LOADER_THREADS = Runtime.getRuntime().availableProcessors();
+    private static final ExecutorService LOADER_POOL = Executors.newFixedThreadPool(LOADER_THREADS, task -> {
+        Thread thread = new Thread(task, "benchmark-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final Map<Integer, ForkJoinPool> QUERY_POOLS = new HashMap<>();
+
+    // Results are written here, so that the JIT cannot drop the benchmarked code
+    static volatile Object blackhole;
+
+    @FunctionalInterface
+    interface Operation {
+        Object run() throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String sizes = args.length > 0 ? args[0] : "10000,100000,1000000,10000000";
+        CONSOLE.printf("%-10s %-30s %-9s %12s %10s %10s %10s %12s %14s%n", "movies", "benchmark", "variant", "ops/s",
+                "p50 ms", "p99 ms", "max ms", "alloc MB/s", "alloc B/op");
+        for (String size : sizes.split(",")) {
+            run(Integer.parseInt(size.trim()));
+        }
+    }
+
+    private static void run(int size) throws Exception {
+        ActorRegistry actorRegistry = new ActorRegistry();
+        List<Movie> movies = new SyntheticCatalog(42).generate(size, actorRegistry);
+        ActorIndex actorIndex = ActorIndex.build(movies, actorRegistry);
+        CostarGraph costarGraph = CostarGraph.build(actorIndex);
+        BitmapIndex bitmapIndex = BitmapIndex.build(movies, actorRegistry);
+        TitleIndex titleIndex = new TitleIndex(movies);
+        MovieTable movieTable = MovieTable.of(movies);
+        YearIndex yearIndex = YearIndex.build(movies);
+        Actor kevinSpacey = new Actor("Kevin", "Spacey");
+
+        Path file = Files.createTempFile("movies-", ".txt");
+        try {
+            SyntheticCatalog.write(movies, file, Charset.defaultCharset());
+
+            measure(size, "countMovies2003", "old", () -> MoviesExplorer.countMovies2003Old(movies));
+            measure(size, "countMovies2003", "stream", () -> MoviesExplorer.countMovies2003(movies));
+            measure(size, "countMovies2003", "parallel", () -> movies.parallelStream()
+                    .filter(movie -> movie.getYear() == 2003)
+                    .count());
+            measure(size, "countMovies2003", "table", () -> MoviesExplorer.countMovies2003(movieTable));
+            measure(size, "countMovies2003", "index", () -> MoviesExplorer.countMovies2003(yearIndex));
+
+            measure(size, "findFirstLordOfTheRingsMovie", "old",
+                    () -> MoviesExplorer.findFirstLordOfTheRingsMovieOld(movies));
+            measure(size, "findFirstLordOfTheRingsMovie", "stream",
+                    () -> MoviesExplorer.findFirstLordOfTheRingsMovie(movies));
+            measure(size, "findFirstLordOfTheRingsMovie", "parallel", () -> movies.parallelStream()
+                    .filter(movie -> movie.getTitle().contains("Lord of the Rings"))
+                    .findFirst());
+            measure(size, "findFirstLordOfTheRingsMovie", "index",
+                    () -> MoviesExplorer.findFirstLordOfTheRingsMovie(titleIndex));
+
+            measure(size, "getMinYear", "old", () -> MoviesExplorer.getMinYearOld(movies));
+            measure(size, "getMinYear", "stream", () -> MoviesExplorer.getMinYear(movies));
+            measure(size, "getMinYear", "parallel", () -> movies.parallelStream()
+                    .mapToInt(Movie::getYear)
+                    .min()
+                    .getAsInt());
+            measure(size, "getMinYear", "table", () -> MoviesExplorer.getMinYear(movieTable));
+
+            measure(size, "getMaxYear", "old", () -> MoviesExplorer.getMaxYearOld(movies));
+            measure(size, "getMaxYear", "stream", () -> MoviesExplorer.getMaxYear(movies));
+            measure(size, "getMaxYear", "parallel", () -> movies.parallelStream()
+                    .mapToInt(Movie::getYear)
+                    .max()
+                    .getAsInt());
+            measure(size, "getMaxYear", "table", () -> MoviesExplorer.getMaxYear(movieTable));
+
+            measure(size, "getMoviesByYear", "old", () -> MoviesExplorer.getMoviesByYearOld(movies));
+            measure(size, "getMoviesByYear", "stream", () -> MoviesExplorer.getMoviesByYear(movies));
+            measure(size, "getMoviesByYear", "parallel", () -> movies.parallelStream()
+                    .collect(Collectors.groupingByConcurrent(Movie::getYear)));
+            measure(size, "getMoviesByYear", "index", () -> YearIndex.build(movies).getMoviesByYear());
+
+            measure(size, "getAllActors", "old", () -> MoviesExplorer.getAllActorsOld(movies));
+            measure(size, "getAllActors", "stream", () -> MoviesExplorer.getAllActors(movies));
+            measure(size, "getAllActors", "parallel", () -> movies.parallelStream()
+                    .flatMap(movie -> movie.getActors().stream())
+                    .collect(Collectors.toCollection(() -> (Set<Actor>) ConcurrentHashMap.<Actor> newKeySet())));
+
+            measure(size, "getAllKevinSpaceyMovies", "old", () -> MoviesExplorer.getAllKevinSpaceyMoviesOld(movies));
+            measure(size, "getAllKevinSpaceyMovies", "stream", () -> MoviesExplorer.getAllKevinSpaceyMovies(movies));
+            measure(size, "getAllKevinSpaceyMovies", "parallel", () -> movies.parallelStream()
+                    .filter(movie -> movie.getActors().contains(kevinSpacey))
+                    .collect(Collectors.toList()));
+            measure(size, "getAllKevinSpaceyMovies", "index",
+                    () -> new ArrayList<>(MoviesExplorer.getAllKevinSpaceyMovies(actorIndex)));
+
+            measure(size, "countLongKevinSpaceyMovies", "stream",
+                    () -> MoviesExplorer.countLongKevinSpaceyMovies2000To2005(movies));
+            measure(size, "countLongKevinSpaceyMovies", "parallel", () -> movies.parallelStream()
+                    .filter(movie -> movie.getYear() >= 2000 && movie.getYear() <= 2005)
+                    .filter(movie -> movie.getDuration() > 150)
+                    .filter(movie -> movie.getActors().contains(kevinSpacey))
+                    .count());
+            measure(size, "countLongKevinSpaceyMovies", "bitmap",
+                    () -> MoviesExplorer.countLongKevinSpaceyMovies2000To2005(bitmapIndex));
+            measure(size, "BitmapIndex.build", "index", () -> BitmapIndex.build(movies, actorRegistry));
+
+            scaling(size, movies, kevinSpacey);
+
+            measure(size, "getCoStars", "stream", () -> movies.stream()
+                    .filter(movie -> movie.getActors().contains(kevinSpacey))
+                    .flatMap(movie -> movie.getActors().stream())
+                    .filter(actor -> !actor.equals(kevinSpacey))
+                    .collect(Collectors.toSet()));
+            measure(size, "getCoStars", "graph", () -> costarGraph.getCoStars(kevinSpacey));
+            measure(size, "getNeighbourhood(2)", "graph", () -> costarGraph.getNeighbourhood(kevinSpacey, 2));
+            // The actor seen last plays in few movies, far from the most frequent ones
+            Actor lastActor = actorRegistry.get(actorRegistry.size() - 1);
+            measure(size, "findShortestPath", "graph", () -> costarGraph.findShortestPath(kevinSpacey, lastActor));
+            measure(size, "CostarGraph.build", "index", () -> CostarGraph.build(actorIndex));
+
+            measure(size, "printMoviesSortedByRelease", "old", () -> printing(
+                    () -> MoviesExplorer.printMoviesSortedByReleaseOld(movies)));
+            measure(size, "printMoviesSortedByRelease", "stream", () -> printing(
+                    () -> MoviesExplorer.printMoviesSortedByRelease(movies)));
+            // The null sink leaves only the sorting and the formatting, without the encoding and the output
+            measure(size, "printMoviesSortedByRelease", "nullsink", () -> printing(
+                    () -> MoviesExplorer.printMoviesSortedByRelease(movies, OutputSink.nullSink())));
+            measure(size, "printMoviesSortedByRelease", "counting", () -> printing(
+                    () -> MoviesExplorer.printMovies(MovieSorter.sortByYear(movies), OutputSink.nullSink())));
+
+            measure(size, "printMovieProjectionData", "old", () -> printing(
+                    () -> MoviesExplorer.printMovieProjectionDataOld(movies)));
+            measure(size, "printMovieProjectionData", "stream", () -> printing(
+                    () -> MoviesExplorer.printMovieProjectionData(movies)));
+            measure(size, "printMovieProjectionData", "nullsink", () -> printing(
+                    () -> MoviesExplorer.printMovieProjectionData(movies, OutputSink.nullSink())));
+            ProjectionScheduleGenerator schedule = ProjectionScheduleGenerator.berlin();
+            measure(size, "printMovieProjectionData", "generator", () -> printing(
+                    () -> schedule.write(movies, OutputSink.nullSink())));
+            measure(size, "printMovieProjectionData", "gen-par", () -> printing(
+                    () -> schedule.writeParallel(movies, OutputSink.nullSink())));
+
+            measure(size, "loadMovies", "old", () -> {
+                List<Movie> loaded = new ArrayList<>();
+                MoviesExplorer.loadMoviesOld(file, loaded, new ActorRegistry());
+                return loaded;
+            });
+            measure(size, "loadMovies", "stream", () -> {
+                List<Movie> loaded = new ArrayList<>();
+                MoviesExplorer.loadMovies(file, loaded, new ActorRegistry());
+                return loaded;
+            });
+            measure(size, "loadMovies", "parallel", () -> {
+                List<Movie> loaded = new ArrayList<>();
+                loader(new ActorRegistry()).load(file, loaded);
+                return loaded;
+            });
+            measure(size, "loadMovies", "compact", () -> {
+                List<Movie> loaded = new ArrayList<>();
+                loader(ActorRegistry.compact()).load(file, loaded);
+                return loaded;
+            });
+
+            footprint(size, "loadMovies", "parallel", () -> new ActorRegistry(), file);
+            footprint(size, "loadMovies", "compact", ActorRegistry::compact, file);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static void scaling(int size, List<Movie> movies, Actor actor) throws Exception {
+        for (int parallelism = 1; parallelism <= MAX_PARALLELISM; parallelism *= 2) {
+            String variant = "fj-" + parallelism;
+            ForkJoinPool pool = QUERY_POOLS.computeIfAbsent(parallelism, ForkJoinPool::new);
+            try (ParallelQueries queries = new ParallelQueries(movies, pool)) {
+                measure(size, "countMovies2003", variant, () -> queries.countMovies(2003));
+                measure(size, "getMoviesByYear", variant, queries::getMoviesByYear);
+                measure(size, "getAllActors", variant, queries::getAllActors);
+                measure(size, "getAllKevinSpaceyMovies", variant, () -> queries.getMoviesWithActor(actor));
+            }
+        }
+    }
+
+    private static MovieLoader loader(ActorRegistry actorRegistry) {
+        return new MovieLoader(Charset.defaultCharset(), LOADER_THREADS, actorRegistry, LOADER_POOL);
+    }
+
+    /**
+     * Prints the heap retained by the loaded movies and their actors, per movie.
+     */
+    private static void footprint(int size, String benchmark, String variant, Supplier<ActorRegistry> registry,
+            Path file) throws Exception {
+        long before = usedHeap();
+        List<Movie> loaded = new ArrayList<>();
+        loader(registry.get()).load(file, loaded);
+        long after = usedHeap();
+        blackhole = loaded;
+        CONSOLE.printf("%-10d %-30s %-9s %12s %d B/movie retained%n", size, benchmark, variant, "footprint",
+                (after - before) / Math.max(1, loaded.size()));
+        blackhole = null;
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return MEMORY.getHeapMemoryUsage().getUsed();
+    }
+
+    private static Object printing(Runnable print) {
+        System.setOut(NULL_OUTPUT);
+        try {
+            print.run();
+        } finally {
+            System.setOut(CONSOLE);
+        }
+        return null;
+    }
+
+    private static void measure(int size, String benchmark, String variant, Operation operation) throws Exception {
+        long warmupEnd = System.nanoTime() + WARMUP_NANOS;
+        for (int i = 0; i < MIN_ITERATIONS || System.nanoTime() < warmupEnd; i++) {
+            blackhole = operation.run();
+        }
+
+        long[] latencies = new long[64];
+        int iterations = 0;
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        long end = start + MEASUREMENT_NANOS;
+        long now = start;
+        while (iterations < MIN_ITERATIONS || now < end) {
+            blackhole = operation.run();
+            long finished = System.nanoTime();
+            if (iterations == latencies.length) {
+                latencies = Arrays.copyOf(latencies, iterations * 2);
+            }
+            latencies[iterations++] = finished - now;
+            now = finished;
+        }
+        long elapsed = now - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+
+        Arrays.sort(latencies, 0, iterations);
+        CONSOLE.printf("%-10d %-30s %-9s %12.1f %10.3f %10.3f %10.3f %12.1f %14d%n", size, benchmark, variant,
+                iterations * 1e9 / elapsed, millis(percentile(latencies, iterations, 0.50)),
+                millis(percentile(latencies, iterations, 0.99)), millis(latencies[iterations - 1]),
+                allocated * 1e9 / elapsed / (1024 * 1024), allocated / iterations);
+    }
+
+    private static long percentile(long[] sorted, int count, double percentile) {
+        return sorted[Math.min(count - 1, (int) Math.ceil(percentile * count) - 1)];
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    /**
+     * @return the bytes allocated so far by all the live threads; this includes the common pool used by the parallel
+     *         streams and the pools of the benchmark, which are never shut down, but not threads that have already
+     *         finished
+     */
+    private static long allocatedBytes() {
+        long total = 0;
+        for (long allocated : THREADS.getThreadAllocatedBytes(THREADS.getAllThreadIds())) {
+            total += Math.max(allocated, 0);
+        }
+        return total;
+    }
+}
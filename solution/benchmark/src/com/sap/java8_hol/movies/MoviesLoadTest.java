@@ -0,0 +1,191 @@
+package com.sap.java8_hol.movies;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Puts load on a {@link MoviesServer} and reports the throughput and the latencies at increasing concurrency. Every
+ * client thread sends a mix of the queries of the server, one after the other over a kept-alive connection, and
+ * records the latency of every request.
+ * <p>
+ * By default the clients run in a closed loop: a client sends its next request only when the previous one is
+ * answered. When the server stalls, the clients stop sending, so the stall is recorded as one slow request instead of
+ * all the requests that would have waited for it, and the percentiles look better than they are (coordinated
+ * omission). With {@code -Dloadtest.rate=requests/s} the clients send at a fixed rate instead, shared by all of them,
+ * and the latency of a request is measured from the time it was scheduled, so the time it waited counts as well.
+ * <p>
+ * Without arguments an embedded server is started on a free port with a synthetic catalog; the first argument can be
+ * the base URL of a running server, the second the size of the synthetic catalog. The measurement time per step is
+ * set with {@code -Dloadtest.time=seconds} and the largest concurrency with {@code -Dloadtest.maxConcurrency}.
+ */
+public class MoviesLoadTest {
+
+    private static final long WARMUP_NANOS = TimeUnit.SECONDS.toNanos(Long.getLong("loadtest.warmup", 2));
+    private static final long MEASUREMENT_NANOS = TimeUnit.SECONDS.toNanos(Long.getLong("loadtest.time", 5));
+    private static final int MAX_CONCURRENCY = Integer.getInteger("loadtest.maxConcurrency", 64);
+    // Requests per second of all the clients together, 0 for a closed loop
+    private static final long RATE = Long.getLong("loadtest.rate", 0);
+
+    private static final String[] QUERIES = {
+            "/movies/count?year=2003",
+            "/movies/count?from=1990&to=2005",
+            "/movies/search?title=Lord+of+the+Rings&limit=20",
+            "/movies/actor?firstName=Kevin&lastName=Spacey",
+            "/movies/years",
+            "/movies/by-year?from=2003&to=2003" };
+
+    private static final PrintStream CONSOLE = System.out;
+
+    public static void main(String[] args) throws Exception {
+        // The connections of all the clients are kept alive
+        System.setProperty("http.maxConnections", Integer.toString(MAX_CONCURRENCY));
+
+        MoviesServer server = null;
+        String baseUrl;
+        if (args.length > 0 && args[0].startsWith("http")) {
+            baseUrl = args[0];
+        } else {
+            int size = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+            ActorRegistry actorRegistry = new ActorRegistry();
+            List<Movie> movies = new SyntheticCatalog(42).generate(size, actorRegistry);
+            server = new MoviesServer(movies, actorRegistry, new InetSocketAddress("localhost", 0),
+                    2 * Runtime.getRuntime().availableProcessors());
+            server.start();
+            baseUrl = "http://localhost:" + server.getPort();
+            CONSOLE.println("Embedded server with " + size + " movies on " + baseUrl);
+        }
+
+        try {
+            CONSOLE.println(RATE > 0 ? "Fixed rate of " + RATE + " requests/s, latencies from the scheduled times"
+                    : "Closed loop, every client waits for its response before the next request");
+            CONSOLE.printf("%12s %12s %10s %10s %10s %10s %8s%n", "concurrency", "requests/s", "mean ms", "p50 ms",
+                    "p99 ms", "max ms", "errors");
+            for (int concurrency = 1; concurrency <= MAX_CONCURRENCY; concurrency *= 2) {
+                run(baseUrl, concurrency, WARMUP_NANOS);
+                CONSOLE.println(run(baseUrl, concurrency, MEASUREMENT_NANOS));
+            }
+        } finally {
+            if (server != null) {
+                CONSOLE.println("Query cache: " + server.getCacheStatistics());
+                server.close();
+            }
+        }
+    }
+
+    private static Step run(String baseUrl, int concurrency, long nanos) throws Exception {
+        URL[] urls = new URL[QUERIES.length];
+        for (int i = 0; i < QUERIES.length; i++) {
+            urls[i] = new URL(baseUrl + QUERIES[i]);
+        }
+        LatencyHistogram latencies = new LatencyHistogram();
+        LongAdder errors = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> clients = new ArrayList<>();
+        long[] deadline = new long[1];
+        // The time between the requests of one client at the fixed rate
+        long interval = RATE > 0 ? TimeUnit.SECONDS.toNanos(concurrency) / RATE : 0;
+        for (int client = 0; client < concurrency; client++) {
+            int first = client;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                byte[] buffer = new byte[16 * 1024];
+                // The clients are spread over the interval, so that they do not send at the same time
+                long scheduled = deadline[0] - nanos + interval * first / concurrency;
+                for (int i = first; ; i++) {
+                    long requestStart = interval > 0 ? scheduled : System.nanoTime();
+                    if (requestStart >= deadline[0]) {
+                        break;
+                    }
+                    waitUntil(requestStart);
+                    scheduled += interval;
+                    if (get(urls[i % urls.length], buffer)) {
+                        latencies.record(System.nanoTime() - requestStart);
+                    } else {
+                        errors.increment();
+                    }
+                }
+            }, "load-client-" + client);
+            clients.add(thread);
+            thread.start();
+        }
+
+        long startTime = System.nanoTime();
+        deadline[0] = startTime + nanos;
+        start.countDown();
+        for (Thread client : clients) {
+            client.join();
+        }
+        long elapsed = System.nanoTime() - startTime;
+        return new Step(concurrency, latencies, errors.sum(), elapsed);
+    }
+
+    private static void waitUntil(long time) {
+        for (long now = System.nanoTime(); now < time; now = System.nanoTime()) {
+            LockSupport.parkNanos(time - now);
+        }
+    }
+
+    /**
+     * Reads the whole response, so that the connection goes back to the keep-alive cache.
+     * @return true if the response was 200
+     */
+    private static boolean get(URL url, byte[] buffer) {
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) url.openConnection();
+            int status = connection.getResponseCode();
+            InputStream body = status == HttpURLConnection.HTTP_OK ? connection.getInputStream()
+                    : connection.getErrorStream();
+            if (body != null) {
+                try (InputStream in = body) {
+                    while (in.read(buffer) >= 0) {
+                        // skip
+                    }
+                }
+            }
+            return status == HttpURLConnection.HTTP_OK;
+        } catch (IOException e) {
+            if (connection != null) {
+                connection.disconnect();
+            }
+            return false;
+        }
+    }
+
+    private static class Step {
+
+        private final int concurrency;
+        private final LatencyHistogram latencies;
+        private final long errors;
+        private final long nanos;
+
+        Step(int concurrency, LatencyHistogram latencies, long errors, long nanos) {
+            this.concurrency = concurrency;
+            this.latencies = latencies;
+            this.errors = errors;
+            this.nanos = nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%12d %12.0f %10.3f %10.3f %10.3f %10.3f %8d", concurrency,
+                    latencies.getCount() * 1e9 / nanos, latencies.getMean() / 1e6,
+                    latencies.getPercentile(50) / 1e6, latencies.getPercentile(99) / 1e6,
+                    latencies.getMax() / 1e6, errors);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.sap.java8_hol.movies;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates catalogs of any size that look like the movies file: titles made of common words, years between 1920 and
+ * 2016, durations between 60 and 210 minutes and casts of up to 15 actors. A few actors play in many movies and most
+ * in a handful, the same seed always gives the same catalog.
+ */
+public class SyntheticCatalog {
+
+    private static final String[] WORDS = { "The", "Lord", "of", "the", "Rings", "Return", "King", "Night", "Day",
+            "Blue", "Red", "Seven", "American", "Beauty", "Star", "Story", "Last", "Man", "City", "Love", "War",
+            "House", "Dead", "Dark", "Life", "Big", "Little", "Black", "White", "Girl" };
+
+    private static final String[] FIRST_NAMES = { "Kevin", "Elijah", "Viggo", "Ian", "Sean", "Liv", "Cate", "Brad",
+            "Morgan", "Tom", "Meryl", "Anna", "John", "Mary", "Robert", "Julia", "James", "Emma", "Michael", "Sofia" };
+
+    private static final String[] LAST_NAMES = { "Spacey", "Wood", "Mortensen", "McKellen", "Astin", "Tyler",
+            "Blanchett", "Pitt", "Freeman", "Hanks", "Streep", "Smith", "Johnson", "Brown", "Davis", "Miller",
+            "Wilson", "Moore", "Taylor", "Anderson", "Thomas", "Jackson", "Martin", "Lee", "Walker" };
+
+    private final Random random;
+
+    // A pool of titles shared by all the movies, so that big catalogs do not need a string per title
+    private final List<String> titles = new ArrayList<>();
+
+    public SyntheticCatalog(long seed) {
+        random = new Random(seed);
+        for (int i = 0; i < 5000; i++) {
+            titles.add(randomTitle());
+        }
+        titles.set(titles.size() / 2, "Lord of the Rings: The Fellowship of the Ring, The");
+    }
+
+    public List<Movie> generate(int size, ActorRegistry actorRegistry) {
+        List<Movie> movies = new ArrayList<>(size);
+        int actorPool = Math.max(size / 2, FIRST_NAMES.length);
+        for (int i = 0; i < size; i++) {
+            Movie movie = new Movie(titles.get(random.nextInt(titles.size())), 1920 + random.nextInt(97),
+                    60 + random.nextInt(151), actorRegistry);
+            int cast = random.nextInt(16);
+            for (int j = 0; j < cast; j++) {
+                int actor = skewed(actorPool);
+                movie.addActorId(actorRegistry.intern(FIRST_NAMES[actor % FIRST_NAMES.length],
+                        LAST_NAMES[actor % LAST_NAMES.length] + (actor < FIRST_NAMES.length ? "" : actor)));
+            }
+            movies.add(movie);
+        }
+        return movies;
+    }
+
+    /**
+     * Writes the movies in the format of the movies file.
+     */
+    public static void write(List<Movie> movies, Path file, Charset charset) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, charset)) {
+            for (Movie movie : movies) {
+                writer.append(movie.getTitle()).append(" (").append(Integer.toString(movie.getYear())).append(")/")
+                        .append(Integer.toString(movie.getDuration()));
+                for (Actor actor : movie.getActors()) {
+                    writer.append('/').append(actor.getLastName()).append(", ").append(actor.getFirstName());
+                }
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * @return a number below the bound, small numbers are much more likely than big ones
+     */
+    private int skewed(int bound) {
+        double uniform = random.nextDouble();
+        return (int) (bound * uniform * uniform * uniform);
+    }
+
+    private String randomTitle() {
+        StringBuilder title = new StringBuilder();
+        int words = 1 + random.nextInt(5);
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                title.append(' ');
+            }
+            title.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return title.toString();
+    }
+}
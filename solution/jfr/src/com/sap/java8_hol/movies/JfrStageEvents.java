@@ -0,0 +1,57 @@
+package com.sap.java8_hol.movies;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Commits the spans of the detailed stages as JFR events. This class is loaded only by name from
+ * {@link Instrumentation}, when the JVM has the jdk.jfr module; the events are recorded only while a recording with
+ * the event enabled is running, for example with {@code -XX:StartFlightRecording}.
+ * <p>
+ * The class is in a source root of its own, because jdk.jfr is not in the Java 8 API: the sources in {@code src} are
+ * compiled with {@code --release 8}, and this one is compiled on JDK 11 or later with them on the class path.
+ * <pre>
+ * javac --release 8 -d classes $(find src -name '*.java')
+ * javac --release 11 -cp classes -d classes jfr/src/com/sap/java8_hol/movies/JfrStageEvents.java
+ * </pre>
+ * Without it the explorer runs the same, only without the events.
+ */
+class JfrStageEvents implements Instrumentation.EventRecorder {
+
+    @Name("com.sap.java8_hol.movies.Stage")
+    @Label("Movies Stage")
+    @Category("Movies")
+    @Description("A stage of loading, querying or printing the movies")
+    static class StageEvent extends Event {
+
+        @Label("Stage")
+        String stage;
+
+        @Label("Allocated")
+        @Description("Bytes allocated by the thread of the stage, -1 if not measured")
+        @DataAmount
+        long allocatedBytes;
+    }
+
+    @Override
+    public Object begin() {
+        StageEvent event = new StageEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void commit(Object event, String stage, long allocatedBytes) {
+        StageEvent stageEvent = (StageEvent) event;
+        stageEvent.end();
+        if (stageEvent.shouldCommit()) {
+            stageEvent.stage = stage;
+            stageEvent.allocatedBytes = allocatedBytes;
+            stageEvent.commit();
+        }
+    }
+}
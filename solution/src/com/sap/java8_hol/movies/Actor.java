@@ -5,28 +5,51 @@ public class Actor {
     private String firstName;
     private String lastName;
 
+    // Set instead of the strings when the names are kept in an arena
+    private final NameArena arena;
+    private final int firstNameHandle;
+    private final int lastNameHandle;
+
     public Actor(String firstName, String lastName) {
         this.firstName = firstName;
         this.lastName = lastName;
+        this.arena = null;
+        this.firstNameHandle = -1;
+        this.lastNameHandle = -1;
+    }
+
+    /**
+     * Creates an actor whose names are interned in the arena. It is equal to the actor with the same names as
+     * strings and has the same hash code.
+     */
+    Actor(NameArena arena, int firstNameHandle, int lastNameHandle) {
+        this.arena = arena;
+        this.firstNameHandle = firstNameHandle;
+        this.lastNameHandle = lastNameHandle;
     }
 
     public String getFirstName() {
-        return firstName;
+        return arena == null ? firstName : arena.getString(firstNameHandle);
     }
 
     public String getLastName() {
-        return lastName;
+        return arena == null ? lastName : arena.getString(lastNameHandle);
     }
 
     @Override
     public String toString() {
-        return "Actor [firstName=" + firstName + ", lastName=" + lastName + "]";
+        return "Actor [firstName=" + getFirstName() + ", lastName=" + getLastName() + "]";
     }
 
     @Override
     public int hashCode() {
         final int prime = 31;
         int result = 1;
+        if (arena != null) {
+            result = prime * result + arena.hash(firstNameHandle);
+            result = prime * result + arena.hash(lastNameHandle);
+            return result;
+        }
         result = prime * result + ((firstName == null) ? 0 : firstName.hashCode());
         result = prime * result + ((lastName == null) ? 0 : lastName.hashCode());
         return result;
@@ -41,17 +64,25 @@ public class Actor {
         if (getClass() != obj.getClass())
             return false;
         Actor other = (Actor) obj;
-        if (firstName == null) {
-            if (other.firstName != null)
-                return false;
-        } else if (!firstName.equals(other.firstName))
-            return false;
-        if (lastName == null) {
-            if (other.lastName != null)
-                return false;
-        } else if (!lastName.equals(other.lastName))
-            return false;
-        return true;
+        if (arena != null && arena == other.arena) {
+            // The names are interned, so equal names have the same handle
+            return firstNameHandle == other.firstNameHandle && lastNameHandle == other.lastNameHandle;
+        }
+        return nameEquals(firstName, firstNameHandle, other, other.firstName, other.firstNameHandle)
+                && nameEquals(lastName, lastNameHandle, other, other.lastName, other.lastNameHandle);
+    }
+
+    private boolean nameEquals(String name, int handle, Actor other, String otherName, int otherHandle) {
+        if (arena == null && other.arena == null) {
+            return name == null ? otherName == null : name.equals(otherName);
+        }
+        if (arena == null) {
+            return name != null && other.arena.equals(otherHandle, name);
+        }
+        if (other.arena == null) {
+            return otherName != null && arena.equals(handle, otherName);
+        }
+        return arena.equals(handle, other.arena, otherHandle);
     }
 
 }
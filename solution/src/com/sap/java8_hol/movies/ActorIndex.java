@@ -0,0 +1,231 @@
+package com.sap.java8_hol.movies;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Inverted index from actor to the movies the actor plays in. For every actor id the index keeps a sorted posting
+ * list of movie ordinals (the positions of the movies in the indexed list), all posting lists are stored one after
+ * another in a single int array.
+ * <p>
+ * The index is a snapshot of the movies at build time and should be rebuilt if the movies change.
+ */
+public class ActorIndex {
+
+    private final Movie[] movies;
+    private final ActorRegistry actorRegistry;
+
+    // The postings of actor a are postings[offsets[a]] .. postings[offsets[a] + lengths[a] - 1]
+    private final int[] offsets;
+    private final int[] lengths;
+    private final int[] postings;
+
+    private ActorIndex(Movie[] movies, ActorRegistry actorRegistry, int[] offsets, int[] lengths, int[] postings) {
+        this.movies = movies;
+        this.actorRegistry = actorRegistry;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.postings = postings;
+    }
+
+    /**
+     * Builds the index in two passes over the cast of the movies: the first one counts the movies per actor and the
+     * second one fills the posting lists.
+     * @param actorRegistry the registry that the actors of all the movies are interned in
+     */
+    public static ActorIndex build(List<Movie> movies, ActorRegistry actorRegistry) {
+        Movie[] indexed = movies.toArray(new Movie[movies.size()]);
+        int actors = actorRegistry.size();
+
+        int[] offsets = new int[actors + 1];
+        for (Movie movie : indexed) {
+            if (movie.getActorRegistry() != actorRegistry) {
+                throw new IllegalArgumentException("The actors of " + movie + " are in a different registry");
+            }
+            for (int i = 0; i < movie.getActorCount(); i++) {
+                offsets[movie.getActorId(i) + 1]++;
+            }
+        }
+        for (int actor = 0; actor < actors; actor++) {
+            offsets[actor + 1] += offsets[actor];
+        }
+
+        int[] lengths = new int[actors];
+        int[] postings = new int[offsets[actors]];
+        for (int ordinal = 0; ordinal < indexed.length; ordinal++) {
+            Movie movie = indexed[ordinal];
+            for (int i = 0; i < movie.getActorCount(); i++) {
+                int actor = movie.getActorId(i);
+                int end = offsets[actor] + lengths[actor];
+                // An actor listed twice in the same cast is indexed only once
+                if (lengths[actor] == 0 || postings[end - 1] != ordinal) {
+                    postings[end] = ordinal;
+                    lengths[actor]++;
+                }
+            }
+        }
+        return new ActorIndex(indexed, actorRegistry, offsets, lengths, postings);
+    }
+
+    public List<Movie> findMoviesWithActor(Actor actor) {
+        int actorId = indexedId(actor);
+        if (actorId < 0) {
+            return moviesAt(postings, 0, 0);
+        }
+        return moviesAt(postings, offsets[actorId], offsets[actorId] + lengths[actorId]);
+    }
+
+    public int countMoviesWithActor(Actor actor) {
+        int actorId = indexedId(actor);
+        return actorId < 0 ? 0 : lengths[actorId];
+    }
+
+    /**
+     * @return the number of the actors that play in at least one of the indexed movies
+     */
+    public int getActorCount() {
+        int count = 0;
+        for (int length : lengths) {
+            if (length > 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the movies in which all the given actors play, in their original order
+     */
+    public List<Movie> findMoviesWithAllActors(Actor... actors) {
+        if (actors.length == 0) {
+            return moviesAt(postings, 0, 0);
+        }
+        Integer[] actorIds = new Integer[actors.length];
+        for (int i = 0; i < actors.length; i++) {
+            actorIds[i] = indexedId(actors[i]);
+            if (actorIds[i] < 0) {
+                return moviesAt(postings, 0, 0);
+            }
+        }
+        // Start from the shortest posting list, the intersection can only get shorter
+        Arrays.sort(actorIds, Comparator.comparingInt(actorId -> lengths[actorId]));
+
+        int first = actorIds[0];
+        int[] result = Arrays.copyOfRange(postings, offsets[first], offsets[first] + lengths[first]);
+        int size = result.length;
+        for (int i = 1; i < actorIds.length && size > 0; i++) {
+            size = intersect(result, size, actorIds[i]);
+        }
+        return moviesAt(result, 0, size);
+    }
+
+    /**
+     * @return the movies in which at least one of the given actors plays, in their original order
+     */
+    public List<Movie> findMoviesWithAnyActor(Actor... actors) {
+        int[] result = new int[0];
+        int size = 0;
+        for (Actor actor : actors) {
+            int actorId = indexedId(actor);
+            if (actorId >= 0) {
+                int[] merged = new int[size + lengths[actorId]];
+                size = union(result, size, actorId, merged);
+                result = merged;
+            }
+        }
+        return moviesAt(result, 0, size);
+    }
+
+    /**
+     * Keeps only the ordinals in the first {@code size} elements of {@code ordinals} that are also in the posting list
+     * of the actor. Every ordinal is looked up with a binary search that starts after the previous match.
+     * @return the size of the intersection
+     */
+    private int intersect(int[] ordinals, int size, int actorId) {
+        int from = offsets[actorId];
+        int to = from + lengths[actorId];
+        int result = 0;
+        for (int i = 0; i < size && from < to; i++) {
+            int found = Arrays.binarySearch(postings, from, to, ordinals[i]);
+            if (found >= 0) {
+                ordinals[result++] = ordinals[i];
+                from = found + 1;
+            } else {
+                from = -found - 1;
+            }
+        }
+        return result;
+    }
+
+    private int union(int[] ordinals, int size, int actorId, int[] merged) {
+        int i = 0;
+        int j = offsets[actorId];
+        int to = j + lengths[actorId];
+        int result = 0;
+        while (i < size || j < to) {
+            int next;
+            if (j == to || (i < size && ordinals[i] < postings[j])) {
+                next = ordinals[i++];
+            } else if (i == size || postings[j] < ordinals[i]) {
+                next = postings[j++];
+            } else {
+                next = ordinals[i++];
+                j++;
+            }
+            merged[result++] = next;
+        }
+        return result;
+    }
+
+    // The arrays of the index are shared with the CostarGraph built from it, which only reads them
+
+    Movie[] movies() {
+        return movies;
+    }
+
+    ActorRegistry actorRegistry() {
+        return actorRegistry;
+    }
+
+    int[] offsets() {
+        return offsets;
+    }
+
+    int[] lengths() {
+        return lengths;
+    }
+
+    int[] postings() {
+        return postings;
+    }
+
+    /**
+     * @return the actor id or -1 if the actor plays in none of the indexed movies
+     */
+    int indexedId(Actor actor) {
+        int actorId = actorRegistry.find(actor);
+        return actorId >= 0 && actorId < lengths.length && lengths[actorId] > 0 ? actorId : -1;
+    }
+
+    /**
+     * @return a read-only view of the movies with the ordinals between {@code from} and {@code to}
+     */
+    private List<Movie> moviesAt(int[] ordinals, int from, int to) {
+        return new AbstractList<Movie>() {
+            @Override
+            public Movie get(int index) {
+                if (index < 0 || index >= to - from) {
+                    throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + (to - from));
+                }
+                return movies[ordinals[from + index]];
+            }
+
+            @Override
+            public int size() {
+                return to - from;
+            }
+        };
+    }
+}
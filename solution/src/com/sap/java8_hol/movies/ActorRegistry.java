@@ -0,0 +1,135 @@
+package com.sap.java8_hol.movies;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns the actors of a catalog, so that every actor exists only once, and assigns them dense int ids starting
+ * from 0 in the order in which they are first seen. A registry belongs to one catalog and lives as long as its
+ * movies: it is passed to the loaders and the parsers that create them, and a catalog that is loaded again gets a
+ * new registry.
+ * <p>
+ * Lookups are lock free; only adding a new actor takes a lock, so the registry can be filled by several loader
+ * threads at once.
+ * <p>
+ * A {@link #compact()} registry keeps the names of the actors, and the titles of the movies that use it, in a
+ * {@link NameArena} instead of separate strings.
+ */
+public class ActorRegistry {
+
+    private final ConcurrentHashMap<Actor, Integer> ids = new ConcurrentHashMap<>();
+
+    private volatile Actor[] actors = new Actor[16];
+    private volatile int size;
+
+    private final NameArena nameArena;
+
+    public ActorRegistry() {
+        this(null);
+    }
+
+    private ActorRegistry(NameArena nameArena) {
+        this.nameArena = nameArena;
+    }
+
+    /**
+     * @return a new registry that keeps the names in a name arena
+     */
+    public static ActorRegistry compact() {
+        return new ActorRegistry(new NameArena());
+    }
+
+    public int intern(String firstName, String lastName) {
+        return intern(new Actor(firstName, lastName));
+    }
+
+    /**
+     * @return the id of the actor, the actor is registered if it is not known yet
+     */
+    public int intern(Actor actor) {
+        Integer id = ids.get(actor);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(actor);
+            if (id != null) {
+                return id;
+            }
+            int newId = size;
+            Actor[] current = actors;
+            if (newId == current.length) {
+                current = Arrays.copyOf(current, newId * 2);
+            }
+            Actor stored = compact(actor);
+            current[newId] = stored;
+            actors = current;
+            size = newId + 1;
+            ids.put(stored, newId);
+            Instrumentation.ACTORS_REGISTERED.increment();
+            return newId;
+        }
+    }
+
+    /**
+     * @return the arena of the names, or null if the registry is not compact
+     */
+    public NameArena getNameArena() {
+        return nameArena;
+    }
+
+    /**
+     * @return the id of the actor or -1 if the actor is not registered
+     */
+    public int find(Actor actor) {
+        Integer id = ids.get(actor);
+        return id == null ? -1 : id;
+    }
+
+    public Actor get(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("Unknown actor id: " + id);
+        }
+        return actors[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return a read-only view of the actors registered so far, indexed by id
+     */
+    public List<Actor> getActors() {
+        int count = size;
+        Actor[] snapshot = actors;
+        return new AbstractList<Actor>() {
+            @Override
+            public Actor get(int index) {
+                if (index < 0 || index >= count) {
+                    throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + count);
+                }
+                return snapshot[index];
+            }
+
+            @Override
+            public int size() {
+                return count;
+            }
+        };
+    }
+
+    private Actor compact(Actor actor) {
+        if (nameArena == null) {
+            return actor;
+        }
+        String firstName = actor.getFirstName();
+        String lastName = actor.getLastName();
+        if (firstName == null || lastName == null) {
+            return actor;
+        }
+        return new Actor(nameArena, nameArena.intern(firstName), nameArena.intern(lastName));
+    }
+}
@@ -0,0 +1,238 @@
+package com.sap.java8_hol.movies;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bitmap indexes over the movie ordinals (the positions of the movies in the indexed list): one
+ * {@link CompressedBitmap} per release year, per duration bucket and per actor. A filter that combines several
+ * conditions is answered with bitwise operations on the bitmaps instead of testing every movie:
+ * <pre>
+ * CompressedBitmap found = index.years(2000, 2005)
+ *         .and(index.durations(151, Integer.MAX_VALUE))
+ *         .and(index.actor(new Actor("Kevin", "Spacey")));
+ * int count = found.getCardinality();
+ * List&lt;Movie&gt; movies = index.movies(found);
+ * </pre>
+ * A duration range is answered from the buckets that it covers completely, only the movies of the two buckets at its
+ * ends are checked one by one.
+ * <p>
+ * The index is a snapshot of the movies at build time and should be rebuilt if the movies change. The bitmaps of the
+ * index are frozen once it is built, so the bitmaps that are returned as they are cannot be changed by the callers.
+ */
+public class BitmapIndex {
+
+    public static final int DEFAULT_DURATION_BUCKET = 10;
+
+    private static final CompressedBitmap EMPTY = new CompressedBitmap().freeze();
+
+    private final Movie[] movies;
+    private final ActorRegistry actorRegistry;
+    private final CompressedBitmap all;
+
+    private final int minYear;
+    private final CompressedBitmap[] byYear;
+
+    // The durations by ordinal, for the buckets at the ends of a duration range
+    private final int[] durations;
+    private final int minDuration;
+    private final int durationBucket;
+    private final CompressedBitmap[] byDuration;
+
+    private final CompressedBitmap[] byActor;
+
+    private BitmapIndex(Movie[] movies, ActorRegistry actorRegistry, int minYear, int maxYear, int minDuration,
+            int maxDuration, int durationBucket) {
+        this.movies = movies;
+        this.actorRegistry = actorRegistry;
+        this.all = new CompressedBitmap();
+        this.minYear = minYear;
+        this.byYear = new CompressedBitmap[maxYear - minYear + 1];
+        this.durations = new int[movies.length];
+        this.minDuration = minDuration;
+        this.durationBucket = durationBucket;
+        this.byDuration = new CompressedBitmap[(maxDuration - minDuration) / durationBucket + 1];
+        this.byActor = new CompressedBitmap[actorRegistry.size()];
+    }
+
+    public static BitmapIndex build(List<Movie> movies, ActorRegistry actorRegistry) {
+        return build(movies, actorRegistry, DEFAULT_DURATION_BUCKET);
+    }
+
+    /**
+     * Builds the bitmaps in one pass over the movies. The ordinals are added in increasing order, so every bitmap is
+     * only appended to.
+     * @param durationBucket the number of minutes of durations that share a bitmap
+     */
+    public static BitmapIndex build(List<Movie> movies, ActorRegistry actorRegistry, int durationBucket) {
+        if (durationBucket < 1) {
+            throw new IllegalArgumentException("The duration bucket must be positive: " + durationBucket);
+        }
+        Movie[] indexed = movies.toArray(new Movie[movies.size()]);
+        int minYear = Integer.MAX_VALUE;
+        int maxYear = Integer.MIN_VALUE;
+        int minDuration = Integer.MAX_VALUE;
+        int maxDuration = Integer.MIN_VALUE;
+        for (Movie movie : indexed) {
+            if (movie.getActorRegistry() != actorRegistry) {
+                throw new IllegalArgumentException("The actors of " + movie + " are in a different registry");
+            }
+            minYear = Math.min(minYear, movie.getYear());
+            maxYear = Math.max(maxYear, movie.getYear());
+            minDuration = Math.min(minDuration, movie.getDuration());
+            maxDuration = Math.max(maxDuration, movie.getDuration());
+        }
+        if (indexed.length == 0) {
+            minYear = maxYear = minDuration = maxDuration = 0;
+        }
+
+        BitmapIndex index = new BitmapIndex(indexed, actorRegistry, minYear, maxYear, minDuration, maxDuration,
+                durationBucket);
+        for (int ordinal = 0; ordinal < indexed.length; ordinal++) {
+            Movie movie = indexed[ordinal];
+            index.all.add(ordinal);
+            index.durations[ordinal] = movie.getDuration();
+            add(index.byYear, movie.getYear() - minYear, ordinal);
+            add(index.byDuration, index.durationBucketOf(movie.getDuration()), ordinal);
+            for (int i = 0; i < movie.getActorCount(); i++) {
+                add(index.byActor, movie.getActorId(i), ordinal);
+            }
+        }
+        index.all.freeze();
+        for (CompressedBitmap[] bitmaps : new CompressedBitmap[][] { index.byYear, index.byDuration, index.byActor }) {
+            for (CompressedBitmap bitmap : bitmaps) {
+                if (bitmap != null) {
+                    bitmap.freeze();
+                }
+            }
+        }
+        return index;
+    }
+
+    private static void add(CompressedBitmap[] bitmaps, int bucket, int ordinal) {
+        if (bitmaps[bucket] == null) {
+            bitmaps[bucket] = new CompressedBitmap();
+        }
+        bitmaps[bucket].add(ordinal);
+    }
+
+    /**
+     * @return all the indexed movies, for negations with {@link CompressedBitmap#andNot}
+     */
+    public CompressedBitmap all() {
+        return all;
+    }
+
+    public CompressedBitmap year(int year) {
+        long bucket = (long) year - minYear;
+        return bucket < 0 || bucket >= byYear.length ? EMPTY : orEmpty(byYear[(int) bucket]);
+    }
+
+    /**
+     * @return the movies released between the two years, both inclusive
+     */
+    public CompressedBitmap years(int fromYear, int toYear) {
+        int from = (int) Math.max(0, (long) fromYear - minYear);
+        int to = (int) Math.min(byYear.length - 1L, (long) toYear - minYear);
+        List<CompressedBitmap> bitmaps = new ArrayList<>();
+        for (int bucket = from; bucket <= to; bucket++) {
+            if (byYear[bucket] != null) {
+                bitmaps.add(byYear[bucket]);
+            }
+        }
+        return CompressedBitmap.or(bitmaps);
+    }
+
+    /**
+     * @return the movies with a duration between the two, both inclusive
+     */
+    public CompressedBitmap durations(int minMinutes, int maxMinutes) {
+        if (minMinutes > maxMinutes || movies.length == 0) {
+            return EMPTY;
+        }
+        int first = durationBucketOf(minMinutes);
+        int last = durationBucketOf(maxMinutes);
+        List<CompressedBitmap> bitmaps = new ArrayList<>();
+        for (int bucket = first; bucket <= last; bucket++) {
+            CompressedBitmap bitmap = byDuration[bucket];
+            if (bitmap == null) {
+                continue;
+            }
+            boolean partial = (bucket == first && minMinutes > bucketStart(bucket))
+                    || (bucket == last && maxMinutes < bucketStart(bucket + 1) - 1);
+            bitmaps.add(partial ? filterDurations(bitmap, minMinutes, maxMinutes) : bitmap);
+        }
+        return CompressedBitmap.or(bitmaps);
+    }
+
+    /**
+     * @return the movies in which the actor plays
+     */
+    public CompressedBitmap actor(Actor actor) {
+        int actorId = actorRegistry.find(actor);
+        return actorId < 0 || actorId >= byActor.length ? EMPTY : orEmpty(byActor[actorId]);
+    }
+
+    /**
+     * @return a read-only view of the movies in the bitmap, in their original order
+     */
+    public List<Movie> movies(CompressedBitmap bitmap) {
+        int[] ordinals = bitmap.toArray();
+        return new AbstractList<Movie>() {
+            @Override
+            public Movie get(int index) {
+                return movies[ordinals[index]];
+            }
+
+            @Override
+            public int size() {
+                return ordinals.length;
+            }
+        };
+    }
+
+    public int getMovieCount() {
+        return movies.length;
+    }
+
+    /**
+     * @return the number of bytes of all the bitmaps, without the object headers
+     */
+    public long getSizeInBytes() {
+        long bytes = all.getSizeInBytes();
+        for (CompressedBitmap[] bitmaps : new CompressedBitmap[][] { byYear, byDuration, byActor }) {
+            for (CompressedBitmap bitmap : bitmaps) {
+                bytes += bitmap == null ? 0 : bitmap.getSizeInBytes();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the bucket of the duration, durations outside of the indexed range are clamped to its ends
+     */
+    private int durationBucketOf(int minutes) {
+        long bucket = ((long) minutes - minDuration) / durationBucket;
+        return (int) Math.max(0, Math.min(byDuration.length - 1L, bucket));
+    }
+
+    private long bucketStart(int bucket) {
+        return minDuration + (long) bucket * durationBucket;
+    }
+
+    private CompressedBitmap filterDurations(CompressedBitmap bitmap, int minMinutes, int maxMinutes) {
+        CompressedBitmap result = new CompressedBitmap();
+        bitmap.forEach(ordinal -> {
+            int duration = durations[ordinal];
+            if (duration >= minMinutes && duration <= maxMinutes) {
+                result.add(ordinal);
+            }
+        });
+        return result;
+    }
+
+    private static CompressedBitmap orEmpty(CompressedBitmap bitmap) {
+        return bitmap == null ? EMPTY : bitmap;
+    }
+}
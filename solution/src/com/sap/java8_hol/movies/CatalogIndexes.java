@@ -0,0 +1,63 @@
+package com.sap.java8_hol.movies;
+
+/**
+ * The indexes of one {@link CatalogVersion}. The version is immutable, so the indexes are built once and can be
+ * queried from any number of threads; a newer version of the catalog gets indexes of its own.
+ * <pre>
+ * CatalogIndexes indexes = CatalogIndexes.build(catalog.current(), actorRegistry);
+ * long movies2003 = indexes.getYearIndex().countMovies(2003);
+ * </pre>
+ * The indexes are shared and must not be changed, movies are added to the catalog instead.
+ */
+public final class CatalogIndexes {
+
+    private final CatalogVersion version;
+    private final YearIndex yearIndex;
+    private final TitleIndex titleIndex;
+    private final ActorIndex actorIndex;
+    private final BitmapIndex bitmapIndex;
+    private final MovieTable movieTable;
+
+    private CatalogIndexes(CatalogVersion version, ActorRegistry actorRegistry) {
+        this.version = version;
+        this.yearIndex = YearIndex.build(version.getMovies());
+        this.titleIndex = new TitleIndex(version.getMovies());
+        this.actorIndex = ActorIndex.build(version.getMovies(), actorRegistry);
+        this.bitmapIndex = BitmapIndex.build(version.getMovies(), actorRegistry);
+        this.movieTable = MovieTable.of(version.getMovies());
+    }
+
+    /**
+     * @param actorRegistry the registry that the actors of all the movies of the version are interned in
+     */
+    public static CatalogIndexes build(CatalogVersion version, ActorRegistry actorRegistry) {
+        return new CatalogIndexes(version, actorRegistry);
+    }
+
+    /**
+     * @return the version of the catalog that the indexes were built from
+     */
+    public CatalogVersion getVersion() {
+        return version;
+    }
+
+    public YearIndex getYearIndex() {
+        return yearIndex;
+    }
+
+    public TitleIndex getTitleIndex() {
+        return titleIndex;
+    }
+
+    public ActorIndex getActorIndex() {
+        return actorIndex;
+    }
+
+    public BitmapIndex getBitmapIndex() {
+        return bitmapIndex;
+    }
+
+    public MovieTable getMovieTable() {
+        return movieTable;
+    }
+}
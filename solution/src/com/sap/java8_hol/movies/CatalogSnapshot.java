@@ -0,0 +1,209 @@
+package com.sap.java8_hol.movies;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary snapshot of a parsed catalog, which can be memory-mapped instead of parsing the movies file again.
+ * <p>
+ * The snapshot starts with a header, followed by int sections and the string pool (all numbers are big endian):
+ * <pre>
+ * header:   magic, version, CRC32 (long), movie count, actor count, cast size (sum of the cast sizes of all
+ *           movies), string count, string pool size in bytes
+ * movies:   years[movies], durations[movies], title string[movies], cast offsets[movies + 1]
+ * cast:     actor ids[cast size]
+ * actors:   first name string[actors], last name string[actors]
+ * strings:  offsets into the pool[strings + 1], pool of UTF-8 bytes
+ * </pre>
+ * Every distinct string is stored in the pool only once. The checksum covers the whole file except the checksum
+ * itself, so the counts of the header are checked as well as the sections.
+ */
+public class CatalogSnapshot {
+
+    static final int MAGIC = 0x4D56534E; // "MVSN"
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 36;
+    static final int CHECKSUM_OFFSET = 8;
+
+    private CatalogSnapshot() {
+    }
+
+    /**
+     * Opens the snapshot of the movies file, if the snapshot is missing, invalid or older than the movies file it is
+     * built from the movies file first.
+     */
+    public static MappedCatalog loadOrBuild(Path moviesFile, Path snapshotFile) throws IOException {
+        if (Files.exists(snapshotFile)
+                && Files.getLastModifiedTime(snapshotFile).compareTo(Files.getLastModifiedTime(moviesFile)) >= 0) {
+            try {
+                return MappedCatalog.open(snapshotFile);
+            } catch (InvalidSnapshotException e) {
+                // Built by another version or damaged, build it again
+            }
+        }
+        ActorRegistry actorRegistry = new ActorRegistry();
+        List<Movie> movies = new ArrayList<>();
+        new MovieLoader(actorRegistry).load(moviesFile, movies);
+        write(snapshotFile, movies, actorRegistry);
+        return MappedCatalog.open(snapshotFile);
+    }
+
+    /**
+     * Writes the snapshot to a temporary file first and moves it in place only when it is complete.
+     * @param actorRegistry the registry that the actors of all the movies are interned in
+     */
+    public static void write(Path snapshotFile, List<Movie> movies, ActorRegistry actorRegistry) throws IOException {
+        StringPool strings = new StringPool();
+        int[] titles = new int[movies.size()];
+        int castSize = 0;
+        for (int i = 0; i < movies.size(); i++) {
+            Movie movie = movies.get(i);
+            if (movie.getActorRegistry() != actorRegistry) {
+                throw new IllegalArgumentException("The actors of " + movie + " are in a different registry");
+            }
+            titles[i] = strings.add(movie.getTitle());
+            castSize += movie.getActorCount();
+        }
+        int actorCount = actorRegistry.size();
+        int[] firstNames = new int[actorCount];
+        int[] lastNames = new int[actorCount];
+        for (int id = 0; id < actorCount; id++) {
+            Actor actor = actorRegistry.get(id);
+            firstNames[id] = strings.add(actor.getFirstName());
+            lastNames[id] = strings.add(actor.getLastName());
+        }
+
+        Path temporaryFile = Files.createTempFile(snapshotFile.toAbsolutePath().getParent(), "movies-", ".tmp");
+        try {
+            CRC32 checksum = new CRC32();
+            try (OutputStream file = Files.newOutputStream(temporaryFile)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC);
+                header.putInt(VERSION);
+                header.putLong(0); // the checksum is filled in when the body is written
+                header.putInt(movies.size());
+                header.putInt(actorCount);
+                header.putInt(castSize);
+                header.putInt(strings.size());
+                header.putInt(strings.bytes());
+                updateHeaderChecksum(checksum, header);
+                file.write(header.array());
+
+                DataOutputStream body = new DataOutputStream(
+                        new BufferedOutputStream(new CheckedOutputStream(file, checksum), 64 * 1024));
+                for (Movie movie : movies) {
+                    body.writeInt(movie.getYear());
+                }
+                for (Movie movie : movies) {
+                    body.writeInt(movie.getDuration());
+                }
+                writeInts(body, titles);
+                int castOffset = 0;
+                body.writeInt(castOffset);
+                for (Movie movie : movies) {
+                    castOffset += movie.getActorCount();
+                    body.writeInt(castOffset);
+                }
+                for (Movie movie : movies) {
+                    for (int i = 0; i < movie.getActorCount(); i++) {
+                        body.writeInt(movie.getActorId(i));
+                    }
+                }
+                writeInts(body, firstNames);
+                writeInts(body, lastNames);
+                strings.writeTo(body);
+                body.flush();
+            }
+
+            try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.WRITE)) {
+                ByteBuffer value = ByteBuffer.allocate(Long.BYTES).putLong(0, checksum.getValue());
+                channel.write(value, CHECKSUM_OFFSET);
+            }
+            Files.move(temporaryFile, snapshotFile, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    /**
+     * Adds the header without the checksum field to the checksum.
+     */
+    static void updateHeaderChecksum(CRC32 checksum, ByteBuffer header) {
+        for (int i = 0; i < HEADER_SIZE; i++) {
+            if (i < CHECKSUM_OFFSET || i >= CHECKSUM_OFFSET + Long.BYTES) {
+                checksum.update(header.get(i));
+            }
+        }
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    /**
+     * Thrown when a file is not a snapshot, is a snapshot of another version or its checksum does not match.
+     */
+    public static class InvalidSnapshotException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        public InvalidSnapshotException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Deduplicated strings, encoded in UTF-8 one after another.
+     */
+    private static class StringPool {
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private final List<byte[]> encoded = new ArrayList<>();
+        private int bytes;
+
+        int add(String value) {
+            return indexes.computeIfAbsent(value, key -> {
+                byte[] utf8 = key.getBytes(StandardCharsets.UTF_8);
+                encoded.add(utf8);
+                bytes += utf8.length;
+                return encoded.size() - 1;
+            });
+        }
+
+        int size() {
+            return encoded.size();
+        }
+
+        int bytes() {
+            return bytes;
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            int offset = 0;
+            out.writeInt(offset);
+            for (byte[] value : encoded) {
+                offset += value.length;
+                out.writeInt(offset);
+            }
+            for (byte[] value : encoded) {
+                out.write(value);
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.sap.java8_hol.movies;
+
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Splits an array of movies for parallel streams by work instead of by count. The work of a movie is one plus the
+ * size of its cast, because the queries over the actors visit the whole cast, and a split cuts a range where half
+ * of its work is done: a range of movies with big casts is split into fewer movies than a range of movies with
+ * small ones.
+ * <p>
+ * The cumulative work of the movies is computed once, in {@link #of(List)}, and shared by all the spliterators of
+ * the same catalog. Every range knows its exact size, so the spliterator is {@link #SIZED} and {@link #SUBSIZED}, and
+ * it keeps the order of the movies.
+ */
+public class CatalogSpliterator implements Spliterator<Movie> {
+
+    // Ranges with less work are not split any more
+    private static final long MIN_SPLIT_WORK = 4096;
+
+    private final Movie[] movies;
+    // The work of the movies before the movie i is work[i]
+    private final long[] work;
+    private int from;
+    private final int to;
+
+    CatalogSpliterator(Movie[] movies, long[] work, int from, int to) {
+        this.movies = movies;
+        this.work = work;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * @return a spliterator over a snapshot of the movies
+     */
+    public static CatalogSpliterator of(List<Movie> movies) {
+        Movie[] snapshot = movies.toArray(new Movie[movies.size()]);
+        return new CatalogSpliterator(snapshot, cumulativeWork(snapshot), 0, snapshot.length);
+    }
+
+    static long[] cumulativeWork(Movie[] movies) {
+        long[] work = new long[movies.length + 1];
+        for (int i = 0; i < movies.length; i++) {
+            work[i + 1] = work[i] + 1 + movies[i].getActorCount();
+        }
+        return work;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Movie> action) {
+        if (from >= to) {
+            return false;
+        }
+        action.accept(movies[from++]);
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super Movie> action) {
+        Movie[] array = movies;
+        int end = to;
+        for (int i = from; i < end; i++) {
+            action.accept(array[i]);
+        }
+        from = end;
+    }
+
+    /**
+     * Splits off the first half of the work of the range.
+     */
+    @Override
+    public Spliterator<Movie> trySplit() {
+        if (to - from < 2 || work[to] - work[from] < MIN_SPLIT_WORK) {
+            return null;
+        }
+        long half = (work[from] + work[to]) / 2;
+        int middle = firstAtLeast(half, from + 1, to - 1);
+        CatalogSpliterator prefix = new CatalogSpliterator(movies, work, from, middle);
+        from = middle;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return to - from;
+    }
+
+    @Override
+    public long getExactSizeIfKnown() {
+        return to - from;
+    }
+
+    /**
+     * @return the work of the remaining movies
+     */
+    public long getWork() {
+        return work[to] - work[from];
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+    }
+
+    /**
+     * @return the first index between {@code low} and {@code high}, both inclusive, at which the cumulative work
+     *         reaches the value, or {@code high}
+     */
+    private int firstAtLeast(long value, int low, int high) {
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (work[middle] < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
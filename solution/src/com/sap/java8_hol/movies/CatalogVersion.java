@@ -0,0 +1,75 @@
+package com.sap.java8_hol.movies;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable version of a {@link MovieCatalog}. It holds frozen movies only, so it can be queried from any number of
+ * threads without locking, while newer versions of the catalog are being built.
+ * <p>
+ * Every movie has an id in the catalog, assigned when it is added and kept when it is updated. The movies are in the
+ * order in which they were added, so their ids are in increasing order too.
+ */
+public final class CatalogVersion {
+
+    static final CatalogVersion EMPTY = new CatalogVersion(0, new long[0], new Movie[0]);
+
+    private final long version;
+    private final long[] ids;
+    private final Movie[] movies;
+    private final List<Movie> movieList;
+
+    CatalogVersion(long version, long[] ids, Movie[] movies) {
+        this.version = version;
+        this.ids = ids;
+        this.movies = movies;
+        this.movieList = Collections.unmodifiableList(Arrays.asList(movies));
+    }
+
+    /**
+     * @return the number of the version, every change of the catalog increases it
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public int size() {
+        return movies.length;
+    }
+
+    /**
+     * @return the movies of the version, as a read-only list that can be passed to the queries of MoviesExplorer
+     */
+    public List<Movie> getMovies() {
+        return movieList;
+    }
+
+    public Movie getMovie(int index) {
+        return movies[index];
+    }
+
+    public long getId(int index) {
+        return ids[index];
+    }
+
+    /**
+     * @return the movie with the id, or null if there is no such movie in this version
+     */
+    public Movie findMovie(long id) {
+        int index = indexOf(id);
+        return index >= 0 ? movies[index] : null;
+    }
+
+    /**
+     * @return the position of the movie with the id, or a negative number if there is no such movie in this version
+     */
+    public int indexOf(long id) {
+        return Arrays.binarySearch(ids, id);
+    }
+
+    @Override
+    public String toString() {
+        return "CatalogVersion [version=" + version + ", movies=" + movies.length + "]";
+    }
+}
@@ -0,0 +1,152 @@
+package com.sap.java8_hol.movies;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Sink that encodes the text as UTF-8 by hand into a direct byte buffer and writes the buffer to a channel. A high
+ * surrogate at the end of an append is kept until the next one, so a pair that is appended in two parts is encoded as
+ * one code point.
+ */
+class ChannelSink implements OutputSink {
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+    private final char[] digits = new char[11];
+    // The high surrogate that ended the last append, 0 if there is none
+    private char highSurrogate;
+
+    ChannelSink(WritableByteChannel channel, int bufferSize) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    @Override
+    public OutputSink append(CharSequence text) {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80 && highSurrogate == 0) {
+                if (!buffer.hasRemaining()) {
+                    writeBuffer();
+                }
+                buffer.put((byte) c);
+            } else {
+                encode(c);
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public OutputSink append(char[] chars, int offset, int length) {
+        return append(CharBuffer.wrap(chars, offset, length));
+    }
+
+    @Override
+    public OutputSink append(char c) {
+        encode(c);
+        return this;
+    }
+
+    @Override
+    public OutputSink append(int value) {
+        encodeLoneSurrogate();
+        int length = Digits.write(value, digits, 0);
+        if (buffer.remaining() < length) {
+            writeBuffer();
+        }
+        for (int i = 0; i < length; i++) {
+            buffer.put((byte) digits[i]);
+        }
+        return this;
+    }
+
+    @Override
+    public void flush() {
+        writeBuffer();
+    }
+
+    @Override
+    public void close() {
+        try {
+            encodeLoneSurrogate();
+            flush();
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Encodes a char, or keeps it if it is a high surrogate, whose low surrogate may come with the next append.
+     */
+    private void encode(char c) {
+        if (highSurrogate != 0) {
+            char high = highSurrogate;
+            highSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                encode(Character.toCodePoint(high, c));
+                return;
+            }
+            encode((int) high);
+        }
+        if (Character.isHighSurrogate(c)) {
+            highSurrogate = c;
+        } else {
+            encode((int) c);
+        }
+    }
+
+    private void encodeLoneSurrogate() {
+        if (highSurrogate != 0) {
+            encode((int) highSurrogate);
+            highSurrogate = 0;
+        }
+    }
+
+    /**
+     * Encodes a code point as UTF-8. A lone surrogate is written as '?', as the standard encoder does.
+     */
+    private void encode(int codePoint) {
+        if (buffer.remaining() < 4) {
+            writeBuffer();
+        }
+        if (codePoint < 0x80) {
+            buffer.put((byte) codePoint);
+        } else if (codePoint < 0x800) {
+            buffer.put((byte) (0xC0 | codePoint >> 6));
+            buffer.put((byte) (0x80 | codePoint & 0x3F));
+        } else if (Character.isSurrogate((char) codePoint) && codePoint <= Character.MAX_VALUE) {
+            buffer.put((byte) '?');
+        } else if (codePoint < 0x10000) {
+            buffer.put((byte) (0xE0 | codePoint >> 12));
+            buffer.put((byte) (0x80 | codePoint >> 6 & 0x3F));
+            buffer.put((byte) (0x80 | codePoint & 0x3F));
+        } else {
+            buffer.put((byte) (0xF0 | codePoint >> 18));
+            buffer.put((byte) (0x80 | codePoint >> 12 & 0x3F));
+            buffer.put((byte) (0x80 | codePoint >> 6 & 0x3F));
+            buffer.put((byte) (0x80 | codePoint & 0x3F));
+        }
+    }
+
+    private void writeBuffer() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.sap.java8_hol.movies;
+
+import java.util.Arrays;
+
+/**
+ * Sink that keeps the text in a growing char array, which can be cleared and filled again.
+ */
+class CharArraySink implements OutputSink {
+
+    private char[] chars;
+    private int length;
+
+    CharArraySink(int capacity) {
+        chars = new char[capacity];
+    }
+
+    @Override
+    public CharArraySink append(CharSequence text) {
+        int count = text.length();
+        ensureCapacity(count);
+        if (text instanceof String) {
+            ((String) text).getChars(0, count, chars, length);
+        } else {
+            for (int i = 0; i < count; i++) {
+                chars[length + i] = text.charAt(i);
+            }
+        }
+        length += count;
+        return this;
+    }
+
+    @Override
+    public CharArraySink append(char[] text, int offset, int count) {
+        ensureCapacity(count);
+        System.arraycopy(text, offset, chars, length, count);
+        length += count;
+        return this;
+    }
+
+    @Override
+    public CharArraySink append(char c) {
+        ensureCapacity(1);
+        chars[length++] = c;
+        return this;
+    }
+
+    @Override
+    public CharArraySink append(int value) {
+        ensureCapacity(11);
+        length = Digits.write(value, chars, length);
+        return this;
+    }
+
+    /**
+     * Appends the value with at least the given number of digits, padded with leading zeros after the sign.
+     */
+    CharArraySink appendPadded(int value, int digits) {
+        ensureCapacity(Math.max(digits, 10) + 1);
+        length = Digits.writePadded(value, digits, chars, length);
+        return this;
+    }
+
+    int length() {
+        return length;
+    }
+
+    void clear() {
+        length = 0;
+    }
+
+    void writeTo(OutputSink out) {
+        out.append(chars, 0, length);
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public String toString() {
+        return new String(chars, 0, length);
+    }
+
+    private void ensureCapacity(int count) {
+        if (length + count > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(chars.length * 2, length + count));
+        }
+    }
+}
@@ -0,0 +1,718 @@
+package com.sap.java8_hol.movies;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * A compressed set of non-negative ints, laid out like a Roaring bitmap. The values are split by their high 16 bits
+ * into containers of at most 65536 values each, and every container is stored in the smaller of two forms: a sorted
+ * array of the low 16 bits while it has at most 4096 values, and a bitmap of 1024 longs above that. Sparse sets take
+ * two bytes per value and dense sets one bit per possible value.
+ * <p>
+ * {@link #and}, {@link #or} and {@link #andNot} combine two bitmaps container by container with merges and word-wise
+ * operations and return a new bitmap; {@link #andCardinality} counts an intersection without building it.
+ * <p>
+ * A bitmap is not thread safe while values are added. Once built, it can be read from any number of threads. A
+ * frozen bitmap cannot be changed any more, it is safe to share with callers that should not change it.
+ */
+public final class CompressedBitmap {
+
+    // A container with more values than this is a bitmap container
+    private static final int MAX_ARRAY_SIZE = 4096;
+    private static final int BITMAP_WORDS = 1 << 16 >>> 6;
+
+    private char[] keys;
+    private Container[] containers;
+    private int size;
+    private boolean frozen;
+
+    public CompressedBitmap() {
+        this(new char[4], new Container[4], 0);
+    }
+
+    private CompressedBitmap(char[] keys, Container[] containers, int size) {
+        this.keys = keys;
+        this.containers = containers;
+        this.size = size;
+    }
+
+    public static CompressedBitmap of(int... values) {
+        CompressedBitmap bitmap = new CompressedBitmap();
+        for (int value : values) {
+            bitmap.add(value);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Computes the union of all the bitmaps one key at a time: more than two containers with the same key are ORed
+     * into a single bitmap container, which is counted once at the end.
+     * @return the union of all the bitmaps
+     */
+    public static CompressedBitmap or(List<CompressedBitmap> bitmaps) {
+        int keyCount = 0;
+        for (CompressedBitmap bitmap : bitmaps) {
+            keyCount += bitmap.size;
+        }
+        CompressedBitmap result = new CompressedBitmap(new char[Math.max(4, keyCount)],
+                new Container[Math.max(4, keyCount)], 0);
+        int[] positions = new int[bitmaps.size()];
+        List<Container> sameKey = new ArrayList<>();
+        while (true) {
+            int key = Integer.MAX_VALUE;
+            for (int i = 0; i < positions.length; i++) {
+                CompressedBitmap bitmap = bitmaps.get(i);
+                if (positions[i] < bitmap.size) {
+                    key = Math.min(key, bitmap.keys[positions[i]]);
+                }
+            }
+            if (key == Integer.MAX_VALUE) {
+                return result;
+            }
+            sameKey.clear();
+            for (int i = 0; i < positions.length; i++) {
+                CompressedBitmap bitmap = bitmaps.get(i);
+                if (positions[i] < bitmap.size && bitmap.keys[positions[i]] == key) {
+                    sameKey.add(bitmap.containers[positions[i]++]);
+                }
+            }
+            result.append((char) key, union(sameKey));
+        }
+    }
+
+    private static Container union(List<Container> containers) {
+        if (containers.size() == 1) {
+            return containers.get(0).share();
+        }
+        if (containers.size() == 2) {
+            return containers.get(0).or(containers.get(1));
+        }
+        BitmapContainer union = new BitmapContainer();
+        for (Container container : containers) {
+            union.orWithoutCounting(container);
+        }
+        union.count();
+        return BitmapContainer.shrink(union.words, union.cardinality);
+    }
+
+    /**
+     * Adds the value. Adding values in increasing order is the fastest, they are appended to the last container.
+     */
+    public void add(int value) {
+        if (frozen) {
+            throw new UnsupportedOperationException("The bitmap is frozen");
+        }
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value: " + value);
+        }
+        char key = (char) (value >>> 16);
+        char low = (char) value;
+        int index = size > 0 && keys[size - 1] == key ? size - 1 : search(key);
+        if (index >= 0) {
+            Container container = containers[index];
+            containers[index] = (container.shared ? container.copy() : container).add(low);
+        } else {
+            insert(-index - 1, key, new ArrayContainer().add(low));
+        }
+    }
+
+    /**
+     * Makes the bitmap read-only, {@link #add} throws afterwards.
+     * @return the bitmap itself
+     */
+    public CompressedBitmap freeze() {
+        frozen = true;
+        return this;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    public boolean contains(int value) {
+        if (value < 0) {
+            return false;
+        }
+        int index = search((char) (value >>> 16));
+        return index >= 0 && containers[index].contains((char) value);
+    }
+
+    public int getCardinality() {
+        int cardinality = 0;
+        for (int i = 0; i < size; i++) {
+            cardinality += containers[i].cardinality;
+        }
+        return cardinality;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public CompressedBitmap and(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap(new char[Math.min(size, other.size)],
+                new Container[Math.min(size, other.size)], 0);
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                result.append(keys[i], containers[i].and(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    public CompressedBitmap or(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap(new char[size + other.size], new Container[size + other.size],
+                0);
+        int i = 0;
+        int j = 0;
+        while (i < size || j < other.size) {
+            if (j == other.size || (i < size && keys[i] < other.keys[j])) {
+                result.append(keys[i], containers[i].share());
+                i++;
+            } else if (i == size || other.keys[j] < keys[i]) {
+                result.append(other.keys[j], other.containers[j].share());
+                j++;
+            } else {
+                result.append(keys[i], containers[i].or(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the values of this bitmap that are not in the other one
+     */
+    public CompressedBitmap andNot(CompressedBitmap other) {
+        CompressedBitmap result = new CompressedBitmap(new char[size], new Container[size], 0);
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            while (j < other.size && other.keys[j] < keys[i]) {
+                j++;
+            }
+            if (j < other.size && other.keys[j] == keys[i]) {
+                result.append(keys[i], containers[i].andNot(other.containers[j]));
+            } else {
+                result.append(keys[i], containers[i].share());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of values in both bitmaps
+     */
+    public int andCardinality(CompressedBitmap other) {
+        int cardinality = 0;
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                cardinality += containers[i].andCardinality(other.containers[j]);
+                i++;
+                j++;
+            }
+        }
+        return cardinality;
+    }
+
+    /**
+     * Passes the values to the action in increasing order.
+     */
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < size; i++) {
+            containers[i].forEach(keys[i] << 16, action);
+        }
+    }
+
+    /**
+     * @return the values in increasing order
+     */
+    public int[] toArray() {
+        int[] values = new int[getCardinality()];
+        int position = 0;
+        for (int i = 0; i < size; i++) {
+            position = containers[i].copyTo(keys[i] << 16, values, position);
+        }
+        return values;
+    }
+
+    /**
+     * @return the number of bytes of the containers, without the object headers
+     */
+    public long getSizeInBytes() {
+        long bytes = size * 2L;
+        for (int i = 0; i < size; i++) {
+            bytes += containers[i] instanceof ArrayContainer ? containers[i].cardinality * 2L : BITMAP_WORDS * 8L;
+        }
+        return bytes;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof CompressedBitmap)) {
+            return false;
+        }
+        CompressedBitmap other = (CompressedBitmap) obj;
+        return getCardinality() == other.getCardinality() && andCardinality(other) == getCardinality();
+    }
+
+    @Override
+    public int hashCode() {
+        int[] hash = { 1 };
+        forEach(value -> hash[0] = 31 * hash[0] + value);
+        return hash[0];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder("{");
+        forEach(value -> result.append(result.length() > 1 ? ", " : "").append(value));
+        return result.append('}').toString();
+    }
+
+    /**
+     * Appends a container with a key larger than all the keys so far, empty containers are dropped.
+     */
+    private void append(char key, Container container) {
+        if (container.cardinality == 0) {
+            return;
+        }
+        if (size == keys.length) {
+            grow();
+        }
+        keys[size] = key;
+        containers[size++] = container;
+    }
+
+    private void insert(int index, char key, Container container) {
+        if (size == keys.length) {
+            grow();
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(containers, index, containers, index + 1, size - index);
+        keys[index] = key;
+        containers[index] = container;
+        size++;
+    }
+
+    private void grow() {
+        int capacity = Math.max(4, keys.length * 2);
+        keys = Arrays.copyOf(keys, capacity);
+        containers = Arrays.copyOf(containers, capacity);
+    }
+
+    private int search(char key) {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    /**
+     * The low 16 bits of the values with the same high 16 bits. The operations never change the containers passed to
+     * them; a result can take over a container of an operand unchanged, and such a shared container is copied before
+     * a value is added to it.
+     */
+    private abstract static class Container {
+
+        int cardinality;
+        boolean shared;
+
+        /**
+         * Marks the container as used by another bitmap. Readers of a built bitmap may mark its containers at the
+         * same time, they all write the same value.
+         */
+        Container share() {
+            shared = true;
+            return this;
+        }
+
+        abstract Container copy();
+
+        /**
+         * @return the container with the value, this one or a new one
+         */
+        abstract Container add(char value);
+
+        abstract boolean contains(char value);
+
+        abstract Container and(Container other);
+
+        abstract Container or(Container other);
+
+        abstract Container andNot(Container other);
+
+        abstract int andCardinality(Container other);
+
+        abstract void forEach(int high, IntConsumer action);
+
+        abstract int copyTo(int high, int[] values, int position);
+    }
+
+    private static final class ArrayContainer extends Container {
+
+        char[] values;
+
+        ArrayContainer() {
+            this(new char[4], 0);
+        }
+
+        ArrayContainer(char[] values, int cardinality) {
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        Container add(char value) {
+            int index = cardinality > 0 && values[cardinality - 1] < value ? -cardinality - 1
+                    : Arrays.binarySearch(values, 0, cardinality, value);
+            if (index >= 0) {
+                return this;
+            }
+            if (cardinality == MAX_ARRAY_SIZE) {
+                return toBitmap().add(value);
+            }
+            index = -index - 1;
+            if (cardinality == values.length) {
+                values = Arrays.copyOf(values, Math.min(MAX_ARRAY_SIZE, values.length * 2));
+            }
+            System.arraycopy(values, index, values, index + 1, cardinality - index);
+            values[index] = value;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(values, Math.max(4, cardinality)), cardinality);
+        }
+
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        Container and(Container other) {
+            if (other instanceof BitmapContainer) {
+                return ((BitmapContainer) other).filter(this, true);
+            }
+            ArrayContainer array = (ArrayContainer) other;
+            char[] result = new char[Math.min(cardinality, array.cardinality)];
+            int size = 0;
+            int i = 0;
+            int j = 0;
+            while (i < cardinality && j < array.cardinality) {
+                if (values[i] < array.values[j]) {
+                    i++;
+                } else if (values[i] > array.values[j]) {
+                    j++;
+                } else {
+                    result[size++] = values[i];
+                    i++;
+                    j++;
+                }
+            }
+            return new ArrayContainer(result, size);
+        }
+
+        @Override
+        Container or(Container other) {
+            if (other instanceof BitmapContainer) {
+                return other.or(this);
+            }
+            ArrayContainer array = (ArrayContainer) other;
+            if (cardinality + array.cardinality > MAX_ARRAY_SIZE) {
+                return toBitmap().orInPlace(array);
+            }
+            char[] result = new char[cardinality + array.cardinality];
+            int size = 0;
+            int i = 0;
+            int j = 0;
+            while (i < cardinality || j < array.cardinality) {
+                if (j == array.cardinality || (i < cardinality && values[i] < array.values[j])) {
+                    result[size++] = values[i++];
+                } else if (i == cardinality || array.values[j] < values[i]) {
+                    result[size++] = array.values[j++];
+                } else {
+                    result[size++] = values[i++];
+                    j++;
+                }
+            }
+            return new ArrayContainer(result, size);
+        }
+
+        @Override
+        Container andNot(Container other) {
+            if (other instanceof BitmapContainer) {
+                return ((BitmapContainer) other).filter(this, false);
+            }
+            ArrayContainer array = (ArrayContainer) other;
+            char[] result = new char[cardinality];
+            int size = 0;
+            int j = 0;
+            for (int i = 0; i < cardinality; i++) {
+                while (j < array.cardinality && array.values[j] < values[i]) {
+                    j++;
+                }
+                if (j == array.cardinality || array.values[j] != values[i]) {
+                    result[size++] = values[i];
+                }
+            }
+            return new ArrayContainer(result, size);
+        }
+
+        @Override
+        int andCardinality(Container other) {
+            if (other instanceof BitmapContainer) {
+                return other.andCardinality(this);
+            }
+            ArrayContainer array = (ArrayContainer) other;
+            int count = 0;
+            int i = 0;
+            int j = 0;
+            while (i < cardinality && j < array.cardinality) {
+                if (values[i] < array.values[j]) {
+                    i++;
+                } else if (values[i] > array.values[j]) {
+                    j++;
+                } else {
+                    count++;
+                    i++;
+                    j++;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        void forEach(int high, IntConsumer action) {
+            for (int i = 0; i < cardinality; i++) {
+                action.accept(high | values[i]);
+            }
+        }
+
+        @Override
+        int copyTo(int high, int[] target, int position) {
+            for (int i = 0; i < cardinality; i++) {
+                target[position++] = high | values[i];
+            }
+            return position;
+        }
+
+        BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer();
+            for (int i = 0; i < cardinality; i++) {
+                bitmap.words[values[i] >>> 6] |= 1L << values[i];
+            }
+            bitmap.cardinality = cardinality;
+            return bitmap;
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+
+        final long[] words;
+
+        BitmapContainer() {
+            this(new long[BITMAP_WORDS], 0);
+        }
+
+        BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        Container add(char value) {
+            long bit = 1L << value;
+            if ((words[value >>> 6] & bit) == 0) {
+                words[value >>> 6] |= bit;
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        Container copy() {
+            return new BitmapContainer(words.clone(), cardinality);
+        }
+
+        @Override
+        boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        Container and(Container other) {
+            if (other instanceof ArrayContainer) {
+                return filter((ArrayContainer) other, true);
+            }
+            long[] otherWords = ((BitmapContainer) other).words;
+            long[] result = new long[BITMAP_WORDS];
+            int count = 0;
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                result[i] = words[i] & otherWords[i];
+                count += Long.bitCount(result[i]);
+            }
+            return shrink(result, count);
+        }
+
+        @Override
+        Container or(Container other) {
+            BitmapContainer result = new BitmapContainer(words.clone(), cardinality);
+            if (other instanceof ArrayContainer) {
+                return result.orInPlace((ArrayContainer) other);
+            }
+            long[] otherWords = ((BitmapContainer) other).words;
+            int count = 0;
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                result.words[i] |= otherWords[i];
+                count += Long.bitCount(result.words[i]);
+            }
+            result.cardinality = count;
+            return result;
+        }
+
+        @Override
+        Container andNot(Container other) {
+            long[] result = words.clone();
+            int count;
+            if (other instanceof ArrayContainer) {
+                ArrayContainer array = (ArrayContainer) other;
+                count = cardinality;
+                for (int i = 0; i < array.cardinality; i++) {
+                    char value = array.values[i];
+                    long bit = 1L << value;
+                    if ((result[value >>> 6] & bit) != 0) {
+                        result[value >>> 6] &= ~bit;
+                        count--;
+                    }
+                }
+            } else {
+                long[] otherWords = ((BitmapContainer) other).words;
+                count = 0;
+                for (int i = 0; i < BITMAP_WORDS; i++) {
+                    result[i] &= ~otherWords[i];
+                    count += Long.bitCount(result[i]);
+                }
+            }
+            return shrink(result, count);
+        }
+
+        @Override
+        int andCardinality(Container other) {
+            if (other instanceof ArrayContainer) {
+                ArrayContainer array = (ArrayContainer) other;
+                int count = 0;
+                for (int i = 0; i < array.cardinality; i++) {
+                    if (contains(array.values[i])) {
+                        count++;
+                    }
+                }
+                return count;
+            }
+            long[] otherWords = ((BitmapContainer) other).words;
+            int count = 0;
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                count += Long.bitCount(words[i] & otherWords[i]);
+            }
+            return count;
+        }
+
+        @Override
+        void forEach(int high, IntConsumer action) {
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                for (long word = words[i]; word != 0; word &= word - 1) {
+                    action.accept(high | (i << 6) | Long.numberOfTrailingZeros(word));
+                }
+            }
+        }
+
+        @Override
+        int copyTo(int high, int[] target, int position) {
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                for (long word = words[i]; word != 0; word &= word - 1) {
+                    target[position++] = high | (i << 6) | Long.numberOfTrailingZeros(word);
+                }
+            }
+            return position;
+        }
+
+        void orWithoutCounting(Container other) {
+            if (other instanceof ArrayContainer) {
+                ArrayContainer array = (ArrayContainer) other;
+                for (int i = 0; i < array.cardinality; i++) {
+                    words[array.values[i] >>> 6] |= 1L << array.values[i];
+                }
+            } else {
+                long[] otherWords = ((BitmapContainer) other).words;
+                for (int i = 0; i < BITMAP_WORDS; i++) {
+                    words[i] |= otherWords[i];
+                }
+            }
+        }
+
+        void count() {
+            int count = 0;
+            for (long word : words) {
+                count += Long.bitCount(word);
+            }
+            cardinality = count;
+        }
+
+        BitmapContainer orInPlace(ArrayContainer array) {
+            for (int i = 0; i < array.cardinality; i++) {
+                add(array.values[i]);
+            }
+            return this;
+        }
+
+        /**
+         * @return the values of the array that are in this bitmap, or that are not if {@code keep} is false
+         */
+        ArrayContainer filter(ArrayContainer array, boolean keep) {
+            char[] result = new char[array.cardinality];
+            int size = 0;
+            for (int i = 0; i < array.cardinality; i++) {
+                if (contains(array.values[i]) == keep) {
+                    result[size++] = array.values[i];
+                }
+            }
+            return new ArrayContainer(result, size);
+        }
+
+        /**
+         * @return the words as a container, an array container if they have few enough values
+         */
+        private static Container shrink(long[] words, int cardinality) {
+            if (cardinality > MAX_ARRAY_SIZE) {
+                return new BitmapContainer(words, cardinality);
+            }
+            char[] values = new char[cardinality];
+            int size = 0;
+            for (int i = 0; i < BITMAP_WORDS; i++) {
+                for (long word = words[i]; word != 0; word &= word - 1) {
+                    values[size++] = (char) ((i << 6) | Long.numberOfTrailingZeros(word));
+                }
+            }
+            return new ArrayContainer(values, cardinality);
+        }
+    }
+}
@@ -0,0 +1,422 @@
+package com.sap.java8_hol.movies;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.IntStream;
+
+/**
+ * The graph of the actors that play together. The actors and the movies are the two kinds of nodes of a bipartite
+ * graph in compressed sparse row form: the movies of an actor are the posting lists of an {@link ActorIndex}, and the
+ * casts of the movies are stored one after another in a single int array. Two actors are co-stars when they play in
+ * the same movie, and the distance between two actors is the number of movies on the shortest path between them.
+ * <p>
+ * The queries are breadth-first searches over the int arrays. The frontier of a search is expanded one level at a
+ * time, and a large frontier is split into chunks that are expanded in parallel. The cast of every movie is expanded
+ * at most once per search. The arrays that mark the reached actors and movies are kept per thread and reused by its
+ * next searches, so a search allocates only its frontiers.
+ * <p>
+ * Like the index, the graph is a snapshot of the movies at build time and should be rebuilt if the movies change.
+ */
+public class CostarGraph {
+
+    // Smaller frontiers are expanded in the calling thread
+    private static final int PARALLEL_THRESHOLD = 4096;
+    private static final int CHUNK_SIZE = 1024;
+
+    private final ActorIndex actorIndex;
+    private final Movie[] movies;
+    private final ActorRegistry actorRegistry;
+
+    // The movies of actor a are moviesOfActors[movieOffsets[a]] .. moviesOfActors[movieOffsets[a] + movieCounts[a] - 1]
+    private final int[] movieOffsets;
+    private final int[] movieCounts;
+    private final int[] moviesOfActors;
+
+    // The cast of movie m is casts[castOffsets[m]] .. casts[castOffsets[m + 1] - 1]
+    private final int[] castOffsets;
+    private final int[] casts;
+
+    // The search states of every thread that searched the graph, the ones that are not in use are reused
+    private final ThreadLocal<List<SearchState>> searchStates = ThreadLocal.withInitial(ArrayList::new);
+
+    private CostarGraph(ActorIndex actorIndex, int[] castOffsets, int[] casts) {
+        this.actorIndex = actorIndex;
+        this.movies = actorIndex.movies();
+        this.actorRegistry = actorIndex.actorRegistry();
+        this.movieOffsets = actorIndex.offsets();
+        this.movieCounts = actorIndex.lengths();
+        this.moviesOfActors = actorIndex.postings();
+        this.castOffsets = castOffsets;
+        this.casts = casts;
+    }
+
+    public static CostarGraph build(List<Movie> movies, ActorRegistry actorRegistry) {
+        return build(ActorIndex.build(movies, actorRegistry));
+    }
+
+    /**
+     * Builds the graph over the movies of the index. The movies of the actors are shared with the index, only the
+     * casts of the movies are copied.
+     */
+    public static CostarGraph build(ActorIndex actorIndex) {
+        Movie[] movies = actorIndex.movies();
+        int[] castOffsets = new int[movies.length + 1];
+        for (int ordinal = 0; ordinal < movies.length; ordinal++) {
+            castOffsets[ordinal + 1] = castOffsets[ordinal] + movies[ordinal].getActorCount();
+        }
+        int[] casts = new int[castOffsets[movies.length]];
+        for (int ordinal = 0; ordinal < movies.length; ordinal++) {
+            Movie movie = movies[ordinal];
+            for (int i = 0; i < movie.getActorCount(); i++) {
+                casts[castOffsets[ordinal] + i] = movie.getActorId(i);
+            }
+        }
+        return new CostarGraph(actorIndex, castOffsets, casts);
+    }
+
+    /**
+     * @return the actors that play in at least one movie with the actor, in the order of their ids
+     */
+    public List<Actor> getCoStars(Actor actor) {
+        int actorId = actorIndex.indexedId(actor);
+        if (actorId < 0) {
+            return Collections.emptyList();
+        }
+        try (Search search = search(actorId)) {
+            search.expand();
+            int[] coStars = Arrays.copyOf(search.frontier, search.frontierSize);
+            Arrays.sort(coStars);
+            return actorsAt(coStars, coStars.length);
+        }
+    }
+
+    /**
+     * @return the actors at most {@code hops} co-star links away from the actor, without the actor itself, ordered by
+     *         their distance from the actor
+     */
+    public List<Actor> getNeighbourhood(Actor actor, int hops) {
+        if (hops < 0) {
+            throw new IllegalArgumentException("Negative number of hops: " + hops);
+        }
+        int actorId = actorIndex.indexedId(actor);
+        if (actorId < 0) {
+            return Collections.emptyList();
+        }
+        try (Search search = search(actorId)) {
+            int[] reached = new int[0];
+            int size = 0;
+            while (search.depth < hops && search.expand() > 0) {
+                if (size + search.frontierSize > reached.length) {
+                    reached = Arrays.copyOf(reached, Math.max(size + search.frontierSize, reached.length * 2));
+                }
+                System.arraycopy(search.frontier, 0, reached, size, search.frontierSize);
+                size += search.frontierSize;
+            }
+            return actorsAt(reached, size);
+        }
+    }
+
+    /**
+     * Finds the shortest path between two actors with a bidirectional search: the searches from both actors are
+     * expanded in turns, always the one with the smaller frontier, until they reach a common actor.
+     * @return the shortest path, or an empty optional if the actors are not connected
+     */
+    public Optional<Path> findShortestPath(Actor from, Actor to) {
+        int source = actorIndex.indexedId(from);
+        int target = actorIndex.indexedId(to);
+        if (source < 0 || target < 0) {
+            return Optional.empty();
+        }
+        if (source == target) {
+            return Optional.of(new Path(Collections.singletonList(actorRegistry.get(source)), Collections.emptyList()));
+        }
+        try (Search forward = search(source);
+                Search backward = search(target)) {
+            return findShortestPath(forward, backward);
+        }
+    }
+
+    private Optional<Path> findShortestPath(Search forward, Search backward) {
+        while (true) {
+            Search expanded = forward.frontierSize <= backward.frontierSize ? forward : backward;
+            Search other = expanded == forward ? backward : forward;
+            if (expanded.expand() == 0) {
+                return Optional.empty();
+            }
+            // The first level that reaches the other search holds the middle of a shortest path
+            int middle = -1;
+            int shortest = Integer.MAX_VALUE;
+            for (int i = 0; i < expanded.frontierSize; i++) {
+                int actorId = expanded.frontier[i];
+                int otherDistance = other.distance(actorId);
+                if (otherDistance >= 0 && expanded.depth + otherDistance < shortest) {
+                    shortest = expanded.depth + otherDistance;
+                    middle = actorId;
+                }
+            }
+            if (middle >= 0) {
+                return Optional.of(path(forward, backward, middle));
+            }
+        }
+    }
+
+    /**
+     * @return the number of movies on the shortest path between the actors, or -1 if they are not connected
+     */
+    public int getDistance(Actor from, Actor to) {
+        return findShortestPath(from, to).map(Path::getLength).orElse(-1);
+    }
+
+    public int getActorCount() {
+        return movieCounts.length;
+    }
+
+    public int getMovieCount() {
+        return movies.length;
+    }
+
+    private Path path(Search forward, Search backward, int middle) {
+        List<Actor> actors = new ArrayList<>();
+        List<Movie> pathMovies = new ArrayList<>();
+        for (int actorId = middle; actorId != forward.start; ) {
+            int movie = forward.previousMovie(actorId);
+            actors.add(actorRegistry.get(actorId));
+            pathMovies.add(movies[movie]);
+            actorId = forward.previousActor(actorId, movie);
+        }
+        actors.add(actorRegistry.get(forward.start));
+        Collections.reverse(actors);
+        Collections.reverse(pathMovies);
+        for (int actorId = middle; actorId != backward.start; ) {
+            int movie = backward.previousMovie(actorId);
+            pathMovies.add(movies[movie]);
+            actorId = backward.previousActor(actorId, movie);
+            actors.add(actorRegistry.get(actorId));
+        }
+        return new Path(Collections.unmodifiableList(actors), Collections.unmodifiableList(pathMovies));
+    }
+
+    private List<Actor> actorsAt(int[] actorIds, int size) {
+        List<Actor> actors = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            actors.add(actorRegistry.get(actorIds[i]));
+        }
+        return Collections.unmodifiableList(actors);
+    }
+
+    /**
+     * @return a search from the actor on a search state of this thread that is not in use, or on a new one
+     */
+    private Search search(int start) {
+        List<SearchState> states = searchStates.get();
+        for (SearchState state : states) {
+            if (!state.inUse) {
+                return new Search(start, state);
+            }
+        }
+        // A thread that waits for the chunks of its search can run the search of another query meanwhile
+        SearchState state = new SearchState();
+        states.add(state);
+        return new Search(start, state);
+    }
+
+    /**
+     * The marks of the reached actors and the expanded movies, reused by the searches of one thread. An actor or a
+     * movie is marked by the search whose epoch it holds, so a new search takes the next epoch instead of clearing
+     * the arrays.
+     */
+    private class SearchState {
+
+        final AtomicIntegerArray actorEpochs = new AtomicIntegerArray(movieCounts.length);
+        // The distance from the start of every reached actor, and the movie through which it was reached
+        final int[] levels = new int[movieCounts.length];
+        final int[] previousMovies = new int[movieCounts.length];
+        final AtomicIntegerArray movieEpochs = new AtomicIntegerArray(movies.length);
+        int epoch;
+        boolean inUse;
+
+        int nextEpoch() {
+            if (epoch == Integer.MAX_VALUE) {
+                // The marks of the first searches would look like the marks of the next ones
+                for (int i = 0; i < actorEpochs.length(); i++) {
+                    actorEpochs.set(i, 0);
+                }
+                for (int i = 0; i < movieEpochs.length(); i++) {
+                    movieEpochs.set(i, 0);
+                }
+                epoch = 0;
+            }
+            return ++epoch;
+        }
+    }
+
+    /**
+     * A breadth-first search from one actor. An actor and a movie are claimed with a compare-and-set of its epoch, so
+     * the chunks of a frontier that are expanded in parallel never reach the same actor twice.
+     */
+    private class Search implements AutoCloseable {
+
+        final int start;
+        final SearchState state;
+        final int epoch;
+
+        int[] frontier;
+        int frontierSize;
+        int depth;
+
+        Search(int start, SearchState state) {
+            this.start = start;
+            this.state = state;
+            state.inUse = true;
+            epoch = state.nextEpoch();
+            state.actorEpochs.set(start, epoch);
+            state.levels[start] = 0;
+            frontier = new int[] { start };
+            frontierSize = 1;
+        }
+
+        /**
+         * @return the distance of the actor from the start, or -1 if the actor is not reached yet
+         */
+        int distance(int actorId) {
+            return state.actorEpochs.get(actorId) == epoch ? state.levels[actorId] : -1;
+        }
+
+        int previousMovie(int actorId) {
+            return state.previousMovies[actorId];
+        }
+
+        /**
+         * Releases the search state for the next search of the thread.
+         */
+        @Override
+        public void close() {
+            state.inUse = false;
+        }
+
+        /**
+         * Replaces the frontier with the actors one co-star link further from the start.
+         * @return the size of the new frontier
+         */
+        int expand() {
+            int level = depth + 1;
+            if (frontierSize < PARALLEL_THRESHOLD) {
+                frontier = expand(0, frontierSize, level);
+            } else {
+                int chunks = (frontierSize + CHUNK_SIZE - 1) / CHUNK_SIZE;
+                int[][] reached = new int[chunks][];
+                IntStream.range(0, chunks).parallel().forEach(chunk -> reached[chunk] = expand(chunk * CHUNK_SIZE,
+                        Math.min(frontierSize, (chunk + 1) * CHUNK_SIZE), level));
+                int size = 0;
+                for (int[] part : reached) {
+                    size += part.length;
+                }
+                int[] next = new int[size];
+                size = 0;
+                for (int[] part : reached) {
+                    System.arraycopy(part, 0, next, size, part.length);
+                    size += part.length;
+                }
+                frontier = next;
+            }
+            frontierSize = frontier.length;
+            depth++;
+            return frontierSize;
+        }
+
+        private int[] expand(int from, int to, int level) {
+            AtomicIntegerArray actorEpochs = state.actorEpochs;
+            AtomicIntegerArray movieEpochs = state.movieEpochs;
+            int[] next = new int[16];
+            int size = 0;
+            for (int i = from; i < to; i++) {
+                int actorId = frontier[i];
+                int end = movieOffsets[actorId] + movieCounts[actorId];
+                for (int p = movieOffsets[actorId]; p < end; p++) {
+                    int movie = moviesOfActors[p];
+                    int movieEpoch = movieEpochs.get(movie);
+                    if (movieEpoch == epoch || !movieEpochs.compareAndSet(movie, movieEpoch, epoch)) {
+                        continue;
+                    }
+                    for (int c = castOffsets[movie]; c < castOffsets[movie + 1]; c++) {
+                        int coStar = casts[c];
+                        int actorEpoch = actorEpochs.get(coStar);
+                        if (actorEpoch != epoch && actorEpochs.compareAndSet(coStar, actorEpoch, epoch)) {
+                            state.levels[coStar] = level;
+                            state.previousMovies[coStar] = movie;
+                            if (size == next.length) {
+                                next = Arrays.copyOf(next, size * 2);
+                            }
+                            next[size++] = coStar;
+                        }
+                    }
+                }
+            }
+            return Arrays.copyOf(next, size);
+        }
+
+        /**
+         * @return an actor of the cast of the movie that is one link closer to the start than the given actor
+         */
+        int previousActor(int actorId, int movie) {
+            int level = distance(actorId) - 1;
+            for (int c = castOffsets[movie]; c < castOffsets[movie + 1]; c++) {
+                if (distance(casts[c]) == level) {
+                    return casts[c];
+                }
+            }
+            throw new IllegalStateException("No actor of movie " + movies[movie] + " is at level " + level);
+        }
+    }
+
+    /**
+     * A chain of actors in which every two neighbours play together in the movie between them.
+     */
+    public static class Path {
+
+        private final List<Actor> actors;
+        private final List<Movie> movies;
+
+        Path(List<Actor> actors, List<Movie> movies) {
+            this.actors = actors;
+            this.movies = movies;
+        }
+
+        /**
+         * @return the actors from the first to the last one
+         */
+        public List<Actor> getActors() {
+            return actors;
+        }
+
+        /**
+         * @return the movies between the actors, movie i has actors i and i + 1 in its cast
+         */
+        public List<Movie> getMovies() {
+            return movies;
+        }
+
+        /**
+         * @return the number of movies on the path
+         */
+        public int getLength() {
+            return movies.size();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder result = new StringBuilder();
+            for (int i = 0; i < actors.size(); i++) {
+                if (i > 0) {
+                    result.append(" -(").append(movies.get(i - 1).getTitle()).append(")- ");
+                }
+                result.append(actors.get(i).getFirstName()).append(' ').append(actors.get(i).getLastName());
+            }
+            return result.toString();
+        }
+    }
+}
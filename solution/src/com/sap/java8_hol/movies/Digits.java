@@ -0,0 +1,62 @@
+package com.sap.java8_hol.movies;
+
+/**
+ * Writes ints as decimal digits into char arrays, without creating strings.
+ */
+final class Digits {
+
+    private Digits() {
+    }
+
+    /**
+     * Writes the value at the position; the array needs room for up to 11 chars.
+     * @return the position after the last written char
+     */
+    static int write(int value, char[] chars, int position) {
+        if (value == Integer.MIN_VALUE) {
+            String min = Integer.toString(value);
+            min.getChars(0, min.length(), chars, position);
+            return position + min.length();
+        }
+        int start = position;
+        if (value < 0) {
+            chars[position++] = '-';
+            start++;
+            value = -value;
+        }
+        do {
+            chars[position++] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        // The digits were written from the least significant one, reverse them
+        for (int i = start, j = position - 1; i < j; i++, j--) {
+            char c = chars[i];
+            chars[i] = chars[j];
+            chars[j] = c;
+        }
+        return position;
+    }
+
+    /**
+     * Writes the value with at least the given number of digits, padded with leading zeros after the sign of a
+     * negative value; the array needs room for the sign and for {@code max(digits, 10)} digits.
+     * @return the position after the last written char
+     */
+    static int writePadded(int value, int digits, char[] chars, int position) {
+        if (value < 0) {
+            chars[position++] = '-';
+        }
+        // The digits are taken from the negative value, which also holds Integer.MIN_VALUE
+        int negative = value < 0 ? value : -value;
+        int count = 1;
+        for (int rest = negative / 10; rest != 0; rest /= 10) {
+            count++;
+        }
+        int length = Math.max(digits, count);
+        for (int i = length - 1; i >= 0; i--) {
+            chars[position + i] = (char) ('0' - negative % 10);
+            negative /= 10;
+        }
+        return position + length;
+    }
+}
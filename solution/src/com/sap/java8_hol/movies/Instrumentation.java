@@ -0,0 +1,411 @@
+package com.sap.java8_hol.movies;
+
+import java.io.Closeable;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Measures the stages of the movies explorer: how long loading, parsing, the queries and the printing take, and how
+ * much they allocate. Every stage records its latencies in a {@link LatencyHistogram}; the counters count the parsed
+ * lines, the loaded movies, the registered actors and the bytes read.
+ * <pre>
+ * try (Instrumentation.Span span = Instrumentation.LOAD_MOVIES.start()) {
+ *     ...
+ * }
+ * </pre>
+ * The instrumentation is enabled with {@code -Dmovies.instrumentation=true}. The flag is a constant, so when it is
+ * off the JIT compiler removes the measurements from the instrumented code. The data is read with
+ * {@link #snapshot()} or printed periodically with {@link #dumpPeriodically(Duration, PrintStream)}.
+ * <p>
+ * The allocations are measured per thread, with the thread allocation counters of HotSpot: a stage that hands work
+ * to other threads counts only what its own thread allocates. When the JVM has Flight Recorder, the detailed stages
+ * are also committed as JFR events.
+ */
+public final class Instrumentation {
+
+    public static final boolean ENABLED = Boolean.getBoolean("movies.instrumentation");
+
+    private static final Map<String, Stage> STAGES = new LinkedHashMap<>();
+    private static final Map<String, Counter> COUNTERS = new LinkedHashMap<>();
+
+    private static final com.sun.management.ThreadMXBean ALLOCATIONS = allocationCounters();
+    private static final EventRecorder EVENTS = eventRecorder();
+
+    public static final Stage LOAD_MOVIES = stage("loadMovies");
+    public static final Stage LOAD_CHUNK = stage("loadMovies.chunk");
+    // Too frequent for the thread allocation counters and for events
+    public static final Stage PARSE_LINE = stage("parseLine", false);
+    public static final Stage POLL_FILE = stage("tailer.poll");
+    public static final Stage PRINT_MOVIES = stage("printMovies");
+    public static final Stage PRINT_PROJECTIONS = stage("printMovieProjectionData");
+
+    public static final Counter LINES_PARSED = counter("linesParsed");
+    public static final Counter MOVIES_LOADED = counter("moviesLoaded");
+    public static final Counter ACTORS_REGISTERED = counter("actorsRegistered");
+    public static final Counter BYTES_READ = counter("bytesRead");
+
+    private Instrumentation() {
+    }
+
+    /**
+     * @return the stage with the name, created on the first call. The latency, the allocations and an event are
+     *         recorded for every span of the stage.
+     */
+    public static Stage stage(String name) {
+        return stage(name, true);
+    }
+
+    private static Stage stage(String name, boolean detailed) {
+        synchronized (STAGES) {
+            return STAGES.computeIfAbsent(name, key -> new Stage(key, detailed));
+        }
+    }
+
+    public static Counter counter(String name) {
+        synchronized (COUNTERS) {
+            return COUNTERS.computeIfAbsent(name, Counter::new);
+        }
+    }
+
+    /**
+     * @return the current time for {@link Stage#record(long)}, or 0 if the instrumentation is disabled
+     */
+    public static long nanoTime() {
+        return ENABLED ? System.nanoTime() : 0;
+    }
+
+    public static Snapshot snapshot() {
+        List<StageStatistics> stages = new ArrayList<>();
+        synchronized (STAGES) {
+            for (Stage stage : STAGES.values()) {
+                stages.add(stage.statistics());
+            }
+        }
+        Map<String, Long> counters = new LinkedHashMap<>();
+        synchronized (COUNTERS) {
+            COUNTERS.forEach((name, counter) -> counters.put(name, counter.get()));
+        }
+        return new Snapshot(stages, counters);
+    }
+
+    /**
+     * Clears all the stages and counters.
+     */
+    public static void reset() {
+        synchronized (STAGES) {
+            STAGES.values().forEach(Stage::reset);
+        }
+        synchronized (COUNTERS) {
+            COUNTERS.values().forEach(Counter::reset);
+        }
+    }
+
+    /**
+     * Prints a snapshot every period from a daemon thread, until the returned closeable is closed. Nothing is printed
+     * if the instrumentation is disabled.
+     */
+    public static Closeable dumpPeriodically(Duration period, PrintStream out) {
+        if (!ENABLED) {
+            return () -> { };
+        }
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "instrumentation-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long nanos = period.toNanos();
+        scheduler.scheduleAtFixedRate(() -> out.println(snapshot()), nanos, nanos, TimeUnit.NANOSECONDS);
+        return scheduler::shutdownNow;
+    }
+
+    /**
+     * @return the bytes allocated by the current thread so far, or -1 if the JVM does not count them
+     */
+    static long allocatedBytes() {
+        return ALLOCATIONS == null ? -1 : ALLOCATIONS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounters() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!ENABLED || !(threads instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        if (!allocations.isThreadAllocatedMemorySupported()) {
+            return null;
+        }
+        allocations.setThreadAllocatedMemoryEnabled(true);
+        return allocations;
+    }
+
+    /**
+     * Loads the JFR events by name, so that a JVM without the jdk.jfr module never loads a class that refers to it. The
+     * events are compiled separately from {@code jfr/src}, on JDK 11 or later; without them there are no events.
+     */
+    private static EventRecorder eventRecorder() {
+        if (!ENABLED) {
+            return null;
+        }
+        try {
+            Class.forName("jdk.jfr.Event");
+            return (EventRecorder) Class.forName("com.sap.java8_hol.movies.JfrStageEvents")
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    /**
+     * Emits an event for every span of a detailed stage.
+     */
+    interface EventRecorder {
+
+        /**
+         * @return the event of a span that starts now
+         */
+        Object begin();
+
+        void commit(Object event, String stage, long allocatedBytes);
+    }
+
+    /**
+     * A measured part of the explorer. A stage can be measured with a {@link Span} or, on hot paths, by passing the
+     * start time from {@link Instrumentation#nanoTime()} to {@link #record(long)}.
+     */
+    public static final class Stage {
+
+        private final String name;
+        private final boolean detailed;
+        private final LatencyHistogram latencies = new LatencyHistogram();
+        private final LongAdder allocatedBytes = new LongAdder();
+
+        private Stage(String name, boolean detailed) {
+            this.name = name;
+            this.detailed = detailed;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return a span that records the stage when it is closed, or a span that does nothing if the
+         *         instrumentation is disabled
+         */
+        public Span start() {
+            return ENABLED ? new Span(this) : Span.DISABLED;
+        }
+
+        /**
+         * Records the time since the start time.
+         */
+        public void record(long startNanos) {
+            if (ENABLED) {
+                latencies.record(System.nanoTime() - startNanos);
+            }
+        }
+
+        @SuppressWarnings("try")
+        public <T> T measure(Supplier<T> work) {
+            try (Span span = start()) {
+                return work.get();
+            }
+        }
+
+        public LatencyHistogram getLatencies() {
+            return latencies;
+        }
+
+        StageStatistics statistics() {
+            return new StageStatistics(name, latencies.getCount(), latencies.getTotal(),
+                    latencies.getPercentile(50), latencies.getPercentile(99), latencies.getMax(),
+                    detailed && ALLOCATIONS != null ? allocatedBytes.sum() : -1);
+        }
+
+        void reset() {
+            latencies.reset();
+            allocatedBytes.reset();
+        }
+    }
+
+    /**
+     * One measurement of a stage, from its start to its close. A span belongs to the thread that started it.
+     */
+    public static final class Span implements AutoCloseable {
+
+        static final Span DISABLED = new Span(null);
+
+        private final Stage stage;
+        private final long startNanos;
+        private final long startAllocated;
+        private final Object event;
+
+        private Span(Stage stage) {
+            this.stage = stage;
+            boolean detailed = stage != null && stage.detailed;
+            this.startAllocated = detailed ? allocatedBytes() : -1;
+            this.event = detailed && EVENTS != null ? EVENTS.begin() : null;
+            this.startNanos = stage == null ? 0 : System.nanoTime();
+        }
+
+        @Override
+        public void close() {
+            if (stage == null) {
+                return;
+            }
+            stage.latencies.record(System.nanoTime() - startNanos);
+            long allocated = -1;
+            if (startAllocated >= 0) {
+                allocated = allocatedBytes() - startAllocated;
+                stage.allocatedBytes.add(allocated);
+            }
+            if (event != null) {
+                EVENTS.commit(event, stage.name, allocated);
+            }
+        }
+    }
+
+    /**
+     * A counter that counts only while the instrumentation is enabled.
+     */
+    public static final class Counter {
+
+        private final String name;
+        private final LongAdder value = new LongAdder();
+
+        private Counter(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void add(long delta) {
+            if (ENABLED) {
+                value.add(delta);
+            }
+        }
+
+        public void increment() {
+            if (ENABLED) {
+                value.increment();
+            }
+        }
+
+        public long get() {
+            return value.sum();
+        }
+
+        void reset() {
+            value.reset();
+        }
+    }
+
+    /**
+     * The latencies of a stage in nanoseconds and the bytes its threads allocated, -1 if they were not measured.
+     */
+    public static final class StageStatistics {
+
+        private final String name;
+        private final long count;
+        private final long totalNanos;
+        private final long p50Nanos;
+        private final long p99Nanos;
+        private final long maxNanos;
+        private final long allocatedBytes;
+
+        StageStatistics(String name, long count, long totalNanos, long p50Nanos, long p99Nanos, long maxNanos,
+                long allocatedBytes) {
+            this.name = name;
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.p50Nanos = p50Nanos;
+            this.p99Nanos = p99Nanos;
+            this.maxNanos = maxNanos;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getP50Nanos() {
+            return p50Nanos;
+        }
+
+        public long getP99Nanos() {
+            return p99Nanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-28s %10d %12.3f %12.3f %12.3f %12.3f %12s", name, count, totalNanos / 1e6,
+                    p50Nanos / 1e6, p99Nanos / 1e6, maxNanos / 1e6,
+                    allocatedBytes < 0 ? "-" : String.format("%.1f", allocatedBytes / (1024.0 * 1024)));
+        }
+    }
+
+    /**
+     * The statistics of all the stages that ran at least once and the values of all the counters.
+     */
+    public static final class Snapshot {
+
+        private final List<StageStatistics> stages;
+        private final Map<String, Long> counters;
+
+        Snapshot(List<StageStatistics> stages, Map<String, Long> counters) {
+            this.stages = Collections.unmodifiableList(stages);
+            this.counters = Collections.unmodifiableMap(counters);
+        }
+
+        public List<StageStatistics> getStages() {
+            return stages;
+        }
+
+        public Map<String, Long> getCounters() {
+            return counters;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder result = new StringBuilder(String.format("%-28s %10s %12s %12s %12s %12s %12s%n", "stage",
+                    "count", "total ms", "p50 ms", "p99 ms", "max ms", "alloc MB"));
+            for (StageStatistics stage : stages) {
+                if (stage.getCount() > 0) {
+                    result.append(stage).append(System.lineSeparator());
+                }
+            }
+            counters.forEach((name, value) -> result.append(String.format("%-28s %10d%n", name, value)));
+            return result.toString();
+        }
+    }
+}
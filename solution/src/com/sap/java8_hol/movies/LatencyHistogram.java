@@ -0,0 +1,114 @@
+package com.sap.java8_hol.movies;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of latencies in nanoseconds with logarithmic buckets. Every power of two is split into 8 buckets, so a
+ * percentile is off by at most an eighth of its value, and values below 16 ns have a bucket each.
+ * <p>
+ * Recording takes no lock and does not allocate. The counters are {@link LongAdder}s, which stay cheap when many
+ * threads record into the same bucket at once.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Values below 2^(SUB_BUCKET_BITS + 1) have a bucket each
+    private static final int EXACT_BUCKETS = 2 * SUB_BUCKETS;
+    private static final int BUCKETS = EXACT_BUCKETS + (63 - SUB_BUCKET_BITS - 1) * SUB_BUCKETS;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        buckets[bucket(value)].increment();
+        count.increment();
+        total.add(value);
+        max.accumulate(value);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getTotal() {
+        return total.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long recorded = count.sum();
+        return recorded == 0 ? 0 : (double) total.sum() / recorded;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the upper bound of the bucket that holds the percentile, but no more than the largest recorded value
+     */
+    public long getPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile out of range: " + percentile);
+        }
+        long[] counts = new long[BUCKETS];
+        long recorded = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            recorded += counts[i];
+        }
+        if (recorded == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(recorded * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public void reset() {
+        for (LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+        count.reset();
+        total.reset();
+        max.reset();
+    }
+
+    static int bucket(long value) {
+        if (value < EXACT_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return EXACT_BUCKETS + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBound(int bucket) {
+        if (bucket < EXACT_BUCKETS) {
+            return bucket;
+        }
+        int exponent = (bucket - EXACT_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+        long subBucket = (bucket - EXACT_BUCKETS) % SUB_BUCKETS;
+        int shift = exponent - SUB_BUCKET_BITS;
+        long lower = (SUB_BUCKETS + subBucket) << shift;
+        // The last bucket ends at Long.MAX_VALUE
+        return lower + ((1L << shift) - 1);
+    }
+}
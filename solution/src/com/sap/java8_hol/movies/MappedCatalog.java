@@ -0,0 +1,212 @@
+package com.sap.java8_hol.movies;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import com.sap.java8_hol.movies.CatalogSnapshot.InvalidSnapshotException;
+
+/**
+ * Read-only catalog served directly from a memory-mapped {@link CatalogSnapshot}. The columns are read from the mapped
+ * buffer on every access and movies are created only when they are asked for.
+ * <p>
+ * The snapshot is mapped as a whole, so it has to be smaller than 2GB. The catalog is safe to use from many threads.
+ */
+public class MappedCatalog {
+
+    private final ByteBuffer buffer;
+
+    private final int movieCount;
+    private final int actorCount;
+
+    // Absolute positions of the sections in the buffer
+    private final int years;
+    private final int durations;
+    private final int titles;
+    private final int castOffsets;
+    private final int actorIds;
+    private final int firstNames;
+    private final int lastNames;
+    private final int stringOffsets;
+    private final int pool;
+
+    private volatile ActorRegistry actorRegistry;
+
+    private MappedCatalog(ByteBuffer buffer) throws InvalidSnapshotException {
+        this.buffer = buffer;
+        if (buffer.limit() < CatalogSnapshot.HEADER_SIZE || buffer.getInt(0) != CatalogSnapshot.MAGIC) {
+            throw new InvalidSnapshotException("Not a movies snapshot");
+        }
+        if (buffer.getInt(4) != CatalogSnapshot.VERSION) {
+            throw new InvalidSnapshotException("Unsupported snapshot version " + buffer.getInt(4));
+        }
+        movieCount = buffer.getInt(16);
+        actorCount = buffer.getInt(20);
+        int castSize = buffer.getInt(24);
+        int stringCount = buffer.getInt(28);
+        int poolSize = buffer.getInt(32);
+        if (movieCount < 0 || actorCount < 0 || castSize < 0 || stringCount < 0 || poolSize < 0) {
+            throw new InvalidSnapshotException("Negative count in the snapshot header");
+        }
+
+        // In long, so that damaged counts cannot wrap around before the length check
+        long end = CatalogSnapshot.HEADER_SIZE;
+        years = (int) end;
+        durations = (int) (end += (long) movieCount * Integer.BYTES);
+        titles = (int) (end += (long) movieCount * Integer.BYTES);
+        castOffsets = (int) (end += (long) movieCount * Integer.BYTES);
+        actorIds = (int) (end += ((long) movieCount + 1) * Integer.BYTES);
+        firstNames = (int) (end += (long) castSize * Integer.BYTES);
+        lastNames = (int) (end += (long) actorCount * Integer.BYTES);
+        stringOffsets = (int) (end += (long) actorCount * Integer.BYTES);
+        pool = (int) (end += ((long) stringCount + 1) * Integer.BYTES);
+        if (end + poolSize != buffer.limit()) {
+            throw new InvalidSnapshotException("The snapshot is truncated");
+        }
+
+        CRC32 checksum = new CRC32();
+        CatalogSnapshot.updateHeaderChecksum(checksum, buffer);
+        ByteBuffer body = buffer.duplicate();
+        body.position(CatalogSnapshot.HEADER_SIZE);
+        checksum.update(body);
+        if (checksum.getValue() != buffer.getLong(CatalogSnapshot.CHECKSUM_OFFSET)) {
+            throw new InvalidSnapshotException("The checksum of the snapshot does not match");
+        }
+    }
+
+    public static MappedCatalog open(Path snapshotFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new InvalidSnapshotException("The snapshot is too big to be mapped: " + channel.size());
+            }
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new MappedCatalog(buffer);
+        }
+    }
+
+    public int size() {
+        return movieCount;
+    }
+
+    public int getYear(int movie) {
+        return buffer.getInt(years + checkMovie(movie) * Integer.BYTES);
+    }
+
+    public int getDuration(int movie) {
+        return buffer.getInt(durations + checkMovie(movie) * Integer.BYTES);
+    }
+
+    public String getTitle(int movie) {
+        return string(buffer.getInt(titles + checkMovie(movie) * Integer.BYTES));
+    }
+
+    public int getActorCount(int movie) {
+        int offset = castOffsets + checkMovie(movie) * Integer.BYTES;
+        return buffer.getInt(offset + Integer.BYTES) - buffer.getInt(offset);
+    }
+
+    public int getActorId(int movie, int index) {
+        int offset = castOffsets + checkMovie(movie) * Integer.BYTES;
+        int from = buffer.getInt(offset);
+        if (index < 0 || index >= buffer.getInt(offset + Integer.BYTES) - from) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + getActorCount(movie));
+        }
+        return buffer.getInt(actorIds + (from + index) * Integer.BYTES);
+    }
+
+    public int getActorCount() {
+        return actorCount;
+    }
+
+    public Actor getActor(int actorId) {
+        if (actorId < 0 || actorId >= actorCount) {
+            throw new IndexOutOfBoundsException("Unknown actor id: " + actorId);
+        }
+        return new Actor(string(buffer.getInt(firstNames + actorId * Integer.BYTES)),
+                string(buffer.getInt(lastNames + actorId * Integer.BYTES)));
+    }
+
+    public long countMovies(int year) {
+        long count = 0;
+        for (int movie = 0; movie < movieCount; movie++) {
+            count += buffer.getInt(years + movie * Integer.BYTES) == year ? 1 : 0;
+        }
+        return count;
+    }
+
+    /**
+     * Creates the movie from the snapshot. Its actors are interned in {@link #getActorRegistry()}.
+     */
+    public Movie getMovie(int movie) {
+        Movie result = new Movie(getTitle(movie), getYear(movie), getDuration(movie), getActorRegistry());
+        int actors = getActorCount(movie);
+        for (int i = 0; i < actors; i++) {
+            result.addActorId(getActorId(movie, i));
+        }
+        return result;
+    }
+
+    /**
+     * @return a read-only view of the movies, every movie is created again each time it is read
+     */
+    public List<Movie> asList() {
+        return new AbstractList<Movie>() {
+            @Override
+            public Movie get(int index) {
+                return getMovie(index);
+            }
+
+            @Override
+            public int size() {
+                return movieCount;
+            }
+        };
+    }
+
+    /**
+     * The registry of the actors of the snapshot, an actor has the same id in the registry and in the snapshot. The
+     * registry is filled on first use.
+     */
+    public ActorRegistry getActorRegistry() {
+        ActorRegistry registry = actorRegistry;
+        if (registry == null) {
+            synchronized (this) {
+                registry = actorRegistry;
+                if (registry == null) {
+                    registry = new ActorRegistry();
+                    for (int id = 0; id < actorCount; id++) {
+                        registry.intern(getActor(id));
+                    }
+                    actorRegistry = registry;
+                }
+            }
+        }
+        return registry;
+    }
+
+    private String string(int index) {
+        int offset = stringOffsets + index * Integer.BYTES;
+        int from = buffer.getInt(offset);
+        int length = buffer.getInt(offset + Integer.BYTES) - from;
+        byte[] utf8 = new byte[length];
+        for (int i = 0; i < length; i++) {
+            utf8[i] = buffer.get(pool + from + i);
+        }
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private int checkMovie(int movie) {
+        if (movie < 0 || movie >= movieCount) {
+            throw new IndexOutOfBoundsException("Movie: " + movie + ", Size: " + movieCount);
+        }
+        return movie;
+    }
+}
@@ -1,54 +1,152 @@
 package com.sap.java8_hol.movies;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
 
 public class Movie {
 
+    private static final int[] NO_ACTORS = new int[0];
+
     private String title;
+    // The handle of the title in the name arena of the actor registry, when the registry is compact
+    private int titleHandle = -1;
     private int year;
-    private List<Actor> actors;
+    private int[] actorIds;
+    private int actorCount;
+    private final ActorRegistry actorRegistry;
     private int duration;
+    private boolean frozen;
 
     public int getDuration() {
 		return duration;
 	}
 
 	public void setDuration(int duration) {
+		checkNotFrozen();
 		this.duration = duration;
 	}
 
-	public Movie(String title, int year, int duration) {
-        this.title = title;
+    /**
+     * @param actorRegistry the registry of the catalog of the movie, in which its actors are interned
+     */
+    public Movie(String title, int year, int duration, ActorRegistry actorRegistry) {
+        NameArena nameArena = actorRegistry.getNameArena();
+        if (nameArena != null && title != null) {
+            this.titleHandle = nameArena.add(title);
+        } else {
+            this.title = title;
+        }
         this.year = year;
         this.duration = duration;
-        actors = new ArrayList<>();
+        this.actorRegistry = actorRegistry;
+        actorIds = NO_ACTORS;
     }
 
-    public Movie(String title, int year, List<Actor> actors) {
-        this.title = title;
-        this.year = year;
-        this.actors = actors;
+    public Movie(String title, int year, List<Actor> actors, ActorRegistry actorRegistry) {
+        this(title, year, 0, actorRegistry);
+        actors.forEach(this::addActor);
     }
 
     public String getTitle() {
-        return title;
+        return titleHandle < 0 ? title : actorRegistry.getNameArena().getString(titleHandle);
     }
 
     public int getYear() {
         return year;
     }
 
+    /**
+     * @return a read-only view of the actors, resolved through the actor registry of the movie
+     */
     public List<Actor> getActors() {
-        return actors;
+        return new AbstractList<Actor>() {
+            @Override
+            public Actor get(int index) {
+                return actorRegistry.get(getActorId(index));
+            }
+
+            @Override
+            public int size() {
+                return actorCount;
+            }
+        };
+    }
+
+    public int getActorCount() {
+        return actorCount;
+    }
+
+    public int getActorId(int index) {
+        if (index < 0 || index >= actorCount) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + actorCount);
+        }
+        return actorIds[index];
+    }
+
+    public int[] getActorIds() {
+        return Arrays.copyOf(actorIds, actorCount);
+    }
+
+    public ActorRegistry getActorRegistry() {
+        return actorRegistry;
     }
 
     public void addActor(Actor actor) {
-        this.actors.add(actor);
+        checkNotFrozen();
+        addActorId(actorRegistry.intern(actor));
+    }
+
+    /**
+     * Adds an actor by its id in the actor registry of the movie.
+     */
+    public void addActorId(int actorId) {
+        checkNotFrozen();
+        if (actorCount == actorIds.length) {
+            actorIds = Arrays.copyOf(actorIds, Math.max(4, actorCount * 2));
+        }
+        actorIds[actorCount++] = actorId;
+    }
+
+    /**
+     * @return a copy of the movie that cannot be changed, or the movie itself if it is already frozen. A frozen movie
+     *         can be shared between threads once it is safely published.
+     */
+    public Movie frozenCopy() {
+        if (frozen) {
+            return this;
+        }
+        Movie copy = new Movie(null, year, duration, actorRegistry);
+        copy.title = title;
+        copy.titleHandle = titleHandle;
+        copy.actorIds = getActorIds();
+        copy.actorCount = actorCount;
+        copy.frozen = true;
+        return copy;
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new UnsupportedOperationException("The movie is frozen: " + this);
+        }
     }
 
     @Override
     public String toString() {
-        return "Movie [title=" + title + ", year=" + year +  ", duration=" + duration + "]";
+        return "Movie [title=" + getTitle() + ", year=" + year +  ", duration=" + duration + "]";
+    }
+
+    /**
+     * Appends the same text as {@link #toString()}, without building the string first.
+     */
+    public OutputSink appendTo(OutputSink out) {
+        return out.append("Movie [title=").append(getTitle())
+                .append(", year=").append(year)
+                .append(", duration=").append(duration)
+                .append(']');
     }
 }
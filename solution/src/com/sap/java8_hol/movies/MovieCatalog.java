@@ -0,0 +1,182 @@
+package com.sap.java8_hol.movies;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Movie catalog that can be changed while it is being queried. Every change creates a new immutable
+ * {@link CatalogVersion}; readers take the current version without locking and see a consistent catalog for as long as
+ * they use it.
+ * <pre>
+ * CatalogVersion version = catalog.current();
+ * long movies2003 = MoviesExplorer.countMovies2003(version.getMovies());
+ * </pre>
+ * Writers take a lock and copy the version they change, so changes are applied in batches rather than one by one:
+ * <pre>
+ * catalog.apply(batch -&gt; {
+ *     batch.add(newMovie);
+ *     batch.remove(oldId);
+ * });
+ * </pre>
+ * The catalog keeps frozen copies of the movies it is given, so the callers cannot change them afterwards.
+ */
+public class MovieCatalog {
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile CatalogVersion current = CatalogVersion.EMPTY;
+    private long nextId = 1;
+
+    public MovieCatalog() {
+    }
+
+    public MovieCatalog(List<Movie> movies) {
+        apply(batch -> movies.forEach(batch::add));
+    }
+
+    /**
+     * @return the latest version of the catalog
+     */
+    public CatalogVersion current() {
+        return current;
+    }
+
+    /**
+     * Applies all the changes of the batch at once. The changes are not visible to the readers until the whole batch
+     * is applied; if the batch throws an exception none of them are.
+     * @return the new version of the catalog
+     */
+    public CatalogVersion apply(Consumer<Batch> changes) {
+        writeLock.lock();
+        try {
+            Batch batch = new Batch(current);
+            changes.accept(batch);
+            batch.closed = true;
+            if (batch.isEmpty()) {
+                return current;
+            }
+            CatalogVersion next = batch.build();
+            current = next;
+            return next;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @return the id of the movie in the catalog
+     */
+    public long add(Movie movie) {
+        long[] id = new long[1];
+        apply(batch -> id[0] = batch.add(movie));
+        return id[0];
+    }
+
+    public void update(long id, Movie movie) {
+        apply(batch -> batch.update(id, movie));
+    }
+
+    /**
+     * @return if the catalog had a movie with the id
+     */
+    public boolean remove(long id) {
+        boolean[] removed = new boolean[1];
+        apply(batch -> removed[0] = batch.remove(id));
+        return removed[0];
+    }
+
+    /**
+     * Changes of the catalog that are applied together. A batch can be used only in {@link MovieCatalog#apply}.
+     */
+    public class Batch {
+
+        private final CatalogVersion base;
+        private final Map<Long, Movie> updated = new HashMap<>();
+        private final Set<Long> removed = new HashSet<>();
+        private final LinkedHashMap<Long, Movie> added = new LinkedHashMap<>();
+        private boolean closed;
+
+        private Batch(CatalogVersion base) {
+            this.base = base;
+        }
+
+        /**
+         * @return the id of the movie in the catalog
+         */
+        public long add(Movie movie) {
+            checkOpen();
+            long id = nextId++;
+            added.put(id, movie.frozenCopy());
+            return id;
+        }
+
+        /**
+         * Replaces the movie with the id.
+         * @throws IllegalArgumentException if there is no movie with the id
+         */
+        public void update(long id, Movie movie) {
+            checkOpen();
+            if (added.containsKey(id)) {
+                added.put(id, movie.frozenCopy());
+            } else if (base.indexOf(id) >= 0 && !removed.contains(id)) {
+                updated.put(id, movie.frozenCopy());
+            } else {
+                throw new IllegalArgumentException("No movie with id " + id);
+            }
+        }
+
+        /**
+         * @return if there was a movie with the id
+         */
+        public boolean remove(long id) {
+            checkOpen();
+            if (added.remove(id) != null) {
+                return true;
+            }
+            if (base.indexOf(id) >= 0 && removed.add(id)) {
+                updated.remove(id);
+                return true;
+            }
+            return false;
+        }
+
+        private boolean isEmpty() {
+            return updated.isEmpty() && removed.isEmpty() && added.isEmpty();
+        }
+
+        private void checkOpen() {
+            if (closed) {
+                throw new IllegalStateException("The batch has already been applied");
+            }
+        }
+
+        /**
+         * Copies the base version with the changes in one pass. The added movies have bigger ids than all the movies
+         * of the base, so they go to the end and the ids stay sorted.
+         */
+        private CatalogVersion build() {
+            int size = base.size() - removed.size() + added.size();
+            long[] ids = new long[size];
+            Movie[] movies = new Movie[size];
+            int position = 0;
+            for (int i = 0; i < base.size(); i++) {
+                long id = base.getId(i);
+                if (removed.isEmpty() || !removed.contains(id)) {
+                    Movie movie = updated.isEmpty() ? null : updated.get(id);
+                    ids[position] = id;
+                    movies[position++] = movie != null ? movie : base.getMovie(i);
+                }
+            }
+            for (Map.Entry<Long, Movie> entry : added.entrySet()) {
+                ids[position] = entry.getKey();
+                movies[position++] = entry.getValue();
+            }
+            return new CatalogVersion(base.getVersion() + 1, ids, movies);
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package com.sap.java8_hol.movies;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Follows the movies file while lines are appended to it. The tailer remembers the byte offset up to which the file is
+ * parsed, so every check parses only the complete lines appended since the previous one; a line that is still being
+ * written is left for the next check.
+ * <p>
+ * The appended movies are passed to the listeners, which update the catalog and the indexes built from it:
+ * <pre>
+ * MovieFileTailer tailer = new MovieFileTailer(file, loadStatistics.getBytes(), actorRegistry);
+ * tailer.addListener(titleIndex::addAll);
+ * tailer.watch();
+ * </pre>
+ * The file is expected to only grow by whole lines. If it gets shorter, it has to be loaded again from the start.
+ */
+public class MovieFileTailer implements Closeable {
+
+    private static final int READ_SIZE = 64 * 1024;
+
+    private final Path file;
+    private final MovieLineParser parser;
+    private final List<Consumer<List<Movie>>> listeners = new CopyOnWriteArrayList<>();
+
+    private long offset;
+    private ByteBuffer buffer = ByteBuffer.allocate(READ_SIZE);
+    private volatile WatchService watchService;
+    private volatile boolean closed;
+    private long skippedLines;
+
+    /**
+     * @param offset the number of bytes of the file that are already loaded, it has to be the start of a line
+     */
+    public MovieFileTailer(Path file, long offset, ActorRegistry actorRegistry) {
+        this(file, offset, Charset.defaultCharset(), actorRegistry);
+    }
+
+    public MovieFileTailer(Path file, long offset, Charset charset, ActorRegistry actorRegistry) {
+        if ("\n".getBytes(charset).length != 1) {
+            throw new IllegalArgumentException("Unsupported charset for tailing: " + charset);
+        }
+        if (offset < 0) {
+            throw new IllegalArgumentException("Negative offset: " + offset);
+        }
+        this.file = file;
+        this.offset = offset;
+        this.parser = new MovieLineParser(charset, actorRegistry);
+    }
+
+    /**
+     * Registers a listener of the appended movies. The listeners are called in the thread that checks the file, in
+     * the order in which they were added.
+     */
+    public MovieFileTailer addListener(Consumer<List<Movie>> listener) {
+        listeners.add(listener);
+        return this;
+    }
+
+    public synchronized long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the number of malformed lines that were skipped
+     */
+    public synchronized long getSkippedLines() {
+        return skippedLines;
+    }
+
+    /**
+     * @return the end of the last complete line in the first {@code length} bytes of the file, the offset from which
+     *         a tailer continues a load of those bytes. A last line without a line terminator is not complete, unless
+     *         it is empty.
+     */
+    public static long endOfLastLine(Path file, long length) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long lineEnd = 0;
+            ByteBuffer buffer = ByteBuffer.allocate(READ_SIZE);
+            for (long end = length; end > 0 && lineEnd == 0; end -= buffer.limit()) {
+                long start = Math.max(0, end - READ_SIZE);
+                buffer.clear();
+                buffer.limit((int) (end - start));
+                while (buffer.hasRemaining() && channel.read(buffer, start + buffer.position()) >= 0) {
+                    // read the whole range
+                }
+                for (int i = buffer.position() - 1; i >= 0 && lineEnd == 0; i--) {
+                    if (buffer.get(i) == '\n') {
+                        lineEnd = start + i + 1;
+                    }
+                }
+            }
+            // The loaders skip a last line that is only a carriage return
+            if (length - lineEnd == 1) {
+                ByteBuffer last = ByteBuffer.allocate(1);
+                channel.read(last, lineEnd);
+                if (last.get(0) == '\r') {
+                    return length;
+                }
+            }
+            return lineEnd;
+        }
+    }
+
+    /**
+     * Parses the complete lines appended since the last check and passes them to the listeners.
+     * @return the appended movies
+     */
+    @SuppressWarnings("try")
+    public synchronized List<Movie> poll() throws IOException {
+        List<Movie> movies = new ArrayList<>();
+        long startOffset = offset;
+        try (Instrumentation.Span span = Instrumentation.POLL_FILE.start();
+                FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < offset) {
+                throw new IOException("The file " + file + " was truncated from " + offset + " to " + size
+                        + " bytes, it has to be loaded again");
+            }
+            while (offset < size) {
+                buffer.clear();
+                if (size - offset < buffer.capacity()) {
+                    buffer.limit((int) (size - offset));
+                }
+                int read = readFully(channel, offset);
+                int consumed = parseLines(read, movies);
+                if (consumed > 0) {
+                    offset += consumed;
+                } else if (read == buffer.capacity()) {
+                    // A line longer than the buffer
+                    buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+                } else {
+                    break; // only the start of a line is left
+                }
+            }
+        }
+        Instrumentation.BYTES_READ.add(offset - startOffset);
+        Instrumentation.MOVIES_LOADED.add(movies.size());
+        if (movies.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Movie> appended = Collections.unmodifiableList(movies);
+        for (Consumer<List<Movie>> listener : listeners) {
+            listener.accept(appended);
+        }
+        return appended;
+    }
+
+    /**
+     * Checks the file every time it changes, until the tailer is closed. The changes are watched with the
+     * {@link WatchService} of the directory of the file.
+     */
+    public void watch() throws IOException, InterruptedException {
+        Path directory = file.toAbsolutePath().getParent();
+        try (WatchService watcher = directory.getFileSystem().newWatchService()) {
+            watchService = watcher;
+            if (closed) {
+                return;
+            }
+            directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            // Lines appended before the directory was watched
+            poll();
+            while (true) {
+                WatchKey key = watcher.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    changed |= event.kind() == StandardWatchEventKinds.OVERFLOW
+                            || file.getFileName().equals(event.context());
+                }
+                if (changed) {
+                    poll();
+                }
+                if (!key.reset()) {
+                    throw new IOException("The directory " + directory + " cannot be watched any more");
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            // Closed by close()
+        }
+    }
+
+    /**
+     * Stops {@link #watch()}.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        WatchService watcher = watchService;
+        if (watcher != null) {
+            watcher.close();
+        }
+    }
+
+    private int readFully(FileChannel channel, long position) throws IOException {
+        int read = 0;
+        while (buffer.hasRemaining()) {
+            int count = channel.read(buffer, position + read);
+            if (count < 0) {
+                break;
+            }
+            read += count;
+        }
+        return read;
+    }
+
+    /**
+     * Parses the complete lines at the start of the buffer.
+     * @return the number of bytes up to the end of the last complete line
+     */
+    private int parseLines(int length, List<Movie> movies) {
+        int lineStart = 0;
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(i) == '\n') {
+                int lineEnd = i;
+                if (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r') {
+                    lineEnd--;
+                }
+                if (lineEnd > lineStart) {
+                    parseLine(lineStart, lineEnd, movies);
+                }
+                lineStart = i + 1;
+            }
+        }
+        return lineStart;
+    }
+
+    /**
+     * A malformed line is skipped, so that the lines appended after it are still loaded.
+     */
+    private void parseLine(int from, int to, List<Movie> movies) {
+        try {
+            movies.add(parser.parse(buffer, from, to));
+        } catch (IllegalArgumentException e) {
+            skippedLines++;
+            System.err.println("Skipped the line at byte " + (offset + from) + " of " + file + ": " + e.getMessage());
+        }
+    }
+}
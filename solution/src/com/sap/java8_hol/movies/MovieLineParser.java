@@ -0,0 +1,209 @@
+package com.sap.java8_hol.movies;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Parses a line of the movies file in a single pass over its bytes or chars:
+ * <pre>
+ * Title (year[, suffix])/duration/LastName, FirstName/LastName, FirstName/...
+ * </pre>
+ * The year and the duration are parsed directly as ints and strings are created only for the title and for the actor
+ * names. The actors are interned in the actor registry of the parser. A parser keeps a scratch buffer and is not
+ * thread safe, every thread should use its own instance.
+ */
+public class MovieLineParser {
+
+    private static final char FIELD_SEPARATOR = '/';
+
+    private final Charset charset;
+    private final ActorRegistry actorRegistry;
+
+    // The source of the current line: either a byte buffer or a char sequence
+    private ByteBuffer bytes;
+    private CharSequence chars;
+
+    private byte[] scratch;
+
+    public MovieLineParser(Charset charset, ActorRegistry actorRegistry) {
+        this.charset = charset;
+        this.actorRegistry = actorRegistry;
+    }
+
+    /**
+     * Parses the line between {@code from} (inclusive) and {@code to} (exclusive). The line must not contain the line
+     * terminator. The position of the buffer is not changed.
+     */
+    public Movie parse(ByteBuffer buffer, int from, int to) {
+        long startTime = Instrumentation.nanoTime();
+        bytes = buffer;
+        try {
+            return parsed(parseLine(from, to), startTime);
+        } finally {
+            bytes = null;
+        }
+    }
+
+    public Movie parse(CharSequence line) {
+        long startTime = Instrumentation.nanoTime();
+        chars = line;
+        try {
+            return parsed(parseLine(0, line.length()), startTime);
+        } finally {
+            chars = null;
+        }
+    }
+
+    private static Movie parsed(Movie movie, long startTime) {
+        Instrumentation.PARSE_LINE.record(startTime);
+        Instrumentation.LINES_PARSED.increment();
+        return movie;
+    }
+
+    private Movie parseLine(int from, int to) {
+        // Trailing empty fields are ignored, as String.split does
+        int end = to;
+        while (end > from && at(end - 1) == FIELD_SEPARATOR) {
+            end--;
+        }
+
+        int titleEnd = indexOf(FIELD_SEPARATOR, from, end);
+        if (titleEnd == end) {
+            throw malformed(from, to);
+        }
+        int durationEnd = indexOf(FIELD_SEPARATOR, titleEnd + 1, end);
+
+        int yearStart = lastIndexOf('(', from, titleEnd);
+        int yearEnd = lastIndexOf(')', from, titleEnd);
+        if (yearStart < 0 || yearEnd < yearStart) {
+            throw malformed(from, to);
+        }
+        int suffixStart = indexOf(',', yearStart + 1, yearEnd);
+
+        String title = trimmedText(from, yearStart);
+        int year = parseInt(yearStart + 1, suffixStart);
+        int duration = parseInt(titleEnd + 1, durationEnd);
+        Movie movie = new Movie(title, year, duration, actorRegistry);
+
+        int actorStart = durationEnd + 1;
+        while (actorStart <= end) {
+            int actorEnd = indexOf(FIELD_SEPARATOR, actorStart, end);
+            addActor(movie, actorStart, actorEnd);
+            actorStart = actorEnd + 1;
+        }
+        return movie;
+    }
+
+    /**
+     * The actor field is "LastName, FirstName"; anything after a second ", " is ignored.
+     */
+    private void addActor(Movie movie, int from, int to) {
+        int separator = indexOfNameSeparator(from, to);
+        String lastName;
+        String firstName;
+        if (separator < 0) {
+            lastName = trimmedText(from, to);
+            firstName = "";
+        } else {
+            lastName = trimmedText(from, separator);
+            int firstNameEnd = indexOfNameSeparator(separator + 2, to);
+            firstName = trimmedText(separator + 2, firstNameEnd < 0 ? to : firstNameEnd);
+        }
+        movie.addActorId(actorRegistry.intern(firstName, lastName));
+    }
+
+    private int indexOfNameSeparator(int from, int to) {
+        for (int i = from; i < to - 1; i++) {
+            if (at(i) == ',' && at(i + 1) == ' ') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int parseInt(int from, int to) {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (at(i) == '-' || at(i) == '+')) {
+            negative = at(i) == '-';
+            i++;
+        }
+        if (i == to) {
+            throw numberFormat(from, to);
+        }
+        // Accumulate negatively, so that Integer.MIN_VALUE can be parsed as well
+        int limit = negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+        int result = 0;
+        for (; i < to; i++) {
+            int digit = at(i) - '0';
+            if (digit < 0 || digit > 9 || result < limit / 10) {
+                throw numberFormat(from, to);
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                throw numberFormat(from, to);
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    private int at(int index) {
+        return bytes != null ? bytes.get(index) & 0xFF : chars.charAt(index);
+    }
+
+    private int indexOf(char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (at(i) == c) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    private int lastIndexOf(char c, int from, int to) {
+        for (int i = to - 1; i >= from; i--) {
+            if (at(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Creates a string from the given range without the leading and trailing whitespace, as String.trim does.
+     */
+    private String trimmedText(int from, int to) {
+        int start = from;
+        int end = to;
+        while (start < end && at(start) <= ' ') {
+            start++;
+        }
+        while (end > start && at(end - 1) <= ' ') {
+            end--;
+        }
+        return text(start, end);
+    }
+
+    private String text(int from, int to) {
+        if (chars != null) {
+            return chars.subSequence(from, to).toString();
+        }
+        int length = to - from;
+        if (scratch == null || scratch.length < length) {
+            scratch = new byte[Math.max(length, 64)];
+        }
+        for (int i = 0; i < length; i++) {
+            scratch[i] = bytes.get(from + i);
+        }
+        return new String(scratch, 0, length, charset);
+    }
+
+    private IllegalArgumentException malformed(int from, int to) {
+        return new IllegalArgumentException("Malformed movie line: " + text(from, to));
+    }
+
+    private NumberFormatException numberFormat(int from, int to) {
+        return new NumberFormatException("For input string: \"" + text(from, to) + "\"");
+    }
+}
@@ -0,0 +1,245 @@
+package com.sap.java8_hol.movies;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads the movies file in parallel. The file is split at line boundaries into one chunk per thread, every chunk is
+ * memory-mapped and parsed into its own list and the lists are merged back in file order.
+ * <p>
+ * The charset has to encode '\n' as a single byte (UTF-8, ISO-8859-1, windows-1251 and so on), because the chunks are
+ * split on raw bytes.
+ */
+public class MovieLoader {
+
+    // A single mapping cannot be larger than 2GB, bigger files are simply split into more chunks. A chunk ends at the
+    // end of a line after its nominal size, so the nominal size stays well below the limit.
+    private static final long MAX_CHUNK_SIZE = 1L << 30;
+
+    private static final int BOUNDARY_SCAN_SIZE = 8 * 1024;
+
+    private final Charset charset;
+    private final int parallelism;
+    private final ActorRegistry actorRegistry;
+    // The threads that parse the chunks, null if every load starts threads of its own
+    private final ExecutorService executor;
+
+    public MovieLoader(ActorRegistry actorRegistry) {
+        this(Charset.defaultCharset(), Runtime.getRuntime().availableProcessors(), actorRegistry);
+    }
+
+    public MovieLoader(Charset charset, int parallelism, ActorRegistry actorRegistry) {
+        this(charset, parallelism, actorRegistry, null);
+    }
+
+    /**
+     * Parses the chunks on an executor that is shared with other users and is not shut down by the loader, instead of
+     * starting threads for every load.
+     * @param parallelism the number of chunks that the file is split into at least
+     */
+    public MovieLoader(Charset charset, int parallelism, ActorRegistry actorRegistry, ExecutorService executor) {
+        if ("\n".getBytes(charset).length != 1) {
+            throw new IllegalArgumentException("Unsupported charset for chunked loading: " + charset);
+        }
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        this.charset = charset;
+        this.parallelism = parallelism;
+        this.actorRegistry = actorRegistry;
+        this.executor = executor;
+    }
+
+    /**
+     * Loads all the movies from the file and appends them to the given list in file order.
+     * @return the throughput of the load
+     */
+    @SuppressWarnings("try")
+    public LoadStatistics load(Path filePath, List<Movie> movies) throws IOException {
+        long startTime = System.nanoTime();
+        try (Instrumentation.Span span = Instrumentation.LOAD_MOVIES.start();
+                FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            long[] boundaries = splitAtLineBoundaries(channel);
+            int chunks = boundaries.length - 1;
+
+            ExecutorService executor = this.executor != null ? this.executor
+                    : Executors.newFixedThreadPool(Math.min(parallelism, Math.max(chunks, 1)));
+            List<Future<ChunkResult>> results = new ArrayList<>(chunks);
+            try {
+                for (int i = 0; i < chunks; i++) {
+                    long from = boundaries[i];
+                    long to = boundaries[i + 1];
+                    results.add(executor.submit(() -> parseChunk(channel, from, to)));
+                }
+
+                long lines = 0;
+                for (Future<ChunkResult> result : results) {
+                    ChunkResult chunk = result.get();
+                    movies.addAll(chunk.movies);
+                    lines += chunk.lines;
+                }
+                Instrumentation.MOVIES_LOADED.add(lines);
+                Instrumentation.BYTES_READ.add(channel.size());
+                return new LoadStatistics(lines, channel.size(), System.nanoTime() - startTime);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Loading of " + filePath + " was interrupted", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IOException("Failed to load " + filePath, cause);
+            } finally {
+                if (executor != this.executor) {
+                    executor.shutdownNow();
+                } else {
+                    // The chunks that are left after a failure do not keep the shared threads busy
+                    results.forEach(result -> result.cancel(true));
+                }
+            }
+        }
+    }
+
+    /**
+     * Splits the file into chunks of roughly equal size. Every chunk, except the last one, ends right after a '\n'.
+     */
+    private long[] splitAtLineBoundaries(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size == 0) {
+            return new long[] { 0 };
+        }
+        int chunks = (int) Math.max(parallelism, (size + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE);
+        long chunkSize = Math.max(1, size / chunks);
+
+        List<Long> boundaries = new ArrayList<>(chunks + 1);
+        boundaries.add(0L);
+        ByteBuffer scanBuffer = ByteBuffer.allocate(BOUNDARY_SCAN_SIZE);
+        long previous = 0;
+        for (int i = 1; i < chunks; i++) {
+            long boundary = nextLineStart(channel, Math.max(previous, i * chunkSize), scanBuffer);
+            if (boundary >= size) {
+                break;
+            }
+            if (boundary > previous) {
+                boundaries.add(boundary);
+                previous = boundary;
+            }
+        }
+        boundaries.add(size);
+
+        long[] result = new long[boundaries.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = boundaries.get(i);
+        }
+        return result;
+    }
+
+    private static long nextLineStart(FileChannel channel, long position, ByteBuffer scanBuffer) throws IOException {
+        long current = position;
+        while (true) {
+            scanBuffer.clear();
+            int read = channel.read(scanBuffer, current);
+            if (read <= 0) {
+                return channel.size();
+            }
+            for (int i = 0; i < read; i++) {
+                if (scanBuffer.get(i) == '\n') {
+                    return current + i + 1;
+                }
+            }
+            current += read;
+        }
+    }
+
+    @SuppressWarnings("try")
+    private ChunkResult parseChunk(FileChannel channel, long from, long to) throws IOException {
+        // A span of its own, the allocations are counted per thread
+        try (Instrumentation.Span span = Instrumentation.LOAD_CHUNK.start()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+            ChunkResult result = new ChunkResult();
+            MovieLineParser parser = new MovieLineParser(charset, actorRegistry);
+
+            int limit = buffer.limit();
+            int lineStart = 0;
+            while (lineStart < limit) {
+                int lineEnd = lineStart;
+                while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+                int next = lineEnd + 1;
+                if (lineEnd > lineStart && buffer.get(lineEnd - 1) == '\r') {
+                    lineEnd--;
+                }
+
+                if (lineEnd > lineStart) {
+                    result.movies.add(parser.parse(buffer, lineStart, lineEnd));
+                    result.lines++;
+                }
+                lineStart = next;
+            }
+            return result;
+        }
+    }
+
+    private static class ChunkResult {
+        private final List<Movie> movies = new ArrayList<>();
+        private long lines;
+    }
+
+    /**
+     * Throughput of a single load.
+     */
+    public static class LoadStatistics {
+
+        private final long lines;
+        private final long bytes;
+        private final long nanos;
+
+        LoadStatistics(long lines, long bytes, long nanos) {
+            this.lines = lines;
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+
+        public long getLines() {
+            return lines;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public double getLinesPerSecond() {
+            return nanos == 0 ? 0 : lines * 1e9 / nanos;
+        }
+
+        public double getMegabytesPerSecond() {
+            return nanos == 0 ? 0 : bytes * 1e9 / nanos / (1024 * 1024);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Loaded %d lines (%.1f MB) in %d ms: %.0f lines/s, %.1f MB/s", lines,
+                    bytes / (1024.0 * 1024), nanos / 1_000_000, getLinesPerSecond(), getMegabytesPerSecond());
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.sap.java8_hol.movies;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * Sorting and paging of movies. The order by year uses a counting sort, because the years span only about a century;
+ * other orders use {@link Arrays#parallelSort}. All the sorts are stable: movies that compare equal keep their
+ * original order.
+ * <p>
+ * A page of the sorted movies can be taken without sorting all of them: by counting the movies per year for the order
+ * by year, and with a bounded heap of the first {@code (page + 1) * pageSize} movies for any other order.
+ */
+public class MovieSorter {
+
+    public static final Comparator<Movie> BY_YEAR = Comparator.comparingInt(Movie::getYear);
+    public static final Comparator<Movie> BY_YEAR_AND_TITLE = BY_YEAR.thenComparing(Movie::getTitle);
+
+    // Wider year ranges than this are sorted with a comparison sort instead of allocating the counts
+    private static final int MAX_COUNTING_RANGE = 1 << 16;
+
+    private MovieSorter() {
+    }
+
+    public static List<Movie> sortByYear(List<Movie> movies) {
+        if (movies.isEmpty()) {
+            return new ArrayList<>();
+        }
+        int minYear = Integer.MAX_VALUE;
+        int maxYear = Integer.MIN_VALUE;
+        for (Movie movie : movies) {
+            minYear = Math.min(minYear, movie.getYear());
+            maxYear = Math.max(maxYear, movie.getYear());
+        }
+        if ((long) maxYear - minYear >= MAX_COUNTING_RANGE) {
+            return sort(movies, BY_YEAR);
+        }
+
+        int[] next = new int[maxYear - minYear + 2];
+        for (Movie movie : movies) {
+            next[movie.getYear() - minYear + 1]++;
+        }
+        for (int i = 1; i < next.length; i++) {
+            next[i] += next[i - 1];
+        }
+        Movie[] sorted = new Movie[movies.size()];
+        for (Movie movie : movies) {
+            sorted[next[movie.getYear() - minYear]++] = movie;
+        }
+        return Arrays.asList(sorted);
+    }
+
+    public static List<Movie> sort(List<Movie> movies, Comparator<? super Movie> order) {
+        Movie[] sorted = movies.toArray(new Movie[movies.size()]);
+        Arrays.parallelSort(sorted, order);
+        return Arrays.asList(sorted);
+    }
+
+    /**
+     * @return the movies on the page (counted from 0) of the movies sorted by year
+     */
+    public static List<Movie> pageByYear(List<Movie> movies, int page, int pageSize) {
+        long from = checkPage(page, pageSize);
+        if (from >= movies.size()) {
+            return Collections.emptyList();
+        }
+        int to = (int) Math.min(movies.size(), from + pageSize);
+
+        int minYear = Integer.MAX_VALUE;
+        int maxYear = Integer.MIN_VALUE;
+        for (Movie movie : movies) {
+            minYear = Math.min(minYear, movie.getYear());
+            maxYear = Math.max(maxYear, movie.getYear());
+        }
+        if ((long) maxYear - minYear >= MAX_COUNTING_RANGE) {
+            return page(movies, BY_YEAR, page, pageSize);
+        }
+
+        // Position in the sorted order of the first movie of every year
+        int[] starts = new int[maxYear - minYear + 2];
+        for (Movie movie : movies) {
+            starts[movie.getYear() - minYear + 1]++;
+        }
+        for (int i = 1; i < starts.length; i++) {
+            starts[i] += starts[i - 1];
+        }
+
+        // The second pass computes the sorted position of every movie but keeps only the ones on the page
+        Movie[] result = new Movie[to - (int) from];
+        int[] next = Arrays.copyOf(starts, starts.length - 1);
+        for (Movie movie : movies) {
+            int position = next[movie.getYear() - minYear]++;
+            if (position >= from && position < to) {
+                result[position - (int) from] = movie;
+            }
+        }
+        return Arrays.asList(result);
+    }
+
+    /**
+     * Finds the movies on the page (counted from 0) of the movies sorted in the given order. Only the first
+     * {@code (page + 1) * pageSize} movies are kept in a heap while the movies are scanned once. The heap refers to
+     * the movies by their position in the list, so a list without fast access by position is copied first.
+     */
+    public static List<Movie> page(List<Movie> movies, Comparator<? super Movie> order, int page, int pageSize) {
+        long from = checkPage(page, pageSize);
+        if (from >= movies.size()) {
+            return Collections.emptyList();
+        }
+        int limit = (int) Math.min(movies.size(), from + pageSize);
+        List<Movie> all = movies instanceof RandomAccess ? movies : new ArrayList<>(movies);
+
+        // Compares positions without boxing; movies that compare equal are ordered by their position to stay stable
+        IntBinaryOperator byOrder = (left, right) -> {
+            int result = order.compare(all.get(left), all.get(right));
+            return result != 0 ? result : Integer.compare(left, right);
+        };
+        TopHeap heap = new TopHeap(limit, byOrder);
+        for (int i = 0; i < all.size(); i++) {
+            heap.offer(i);
+        }
+
+        int[] top = heap.sorted();
+        List<Movie> result = new ArrayList<>(limit - (int) from);
+        for (int i = (int) from; i < limit; i++) {
+            result.add(all.get(top[i]));
+        }
+        return result;
+    }
+
+    private static long checkPage(int page, int pageSize) {
+        if (page < 0 || pageSize <= 0) {
+            throw new IllegalArgumentException("Invalid page " + page + " of size " + pageSize);
+        }
+        return (long) page * pageSize;
+    }
+
+    /**
+     * Keeps the smallest {@code capacity} positions offered to it. It is a binary max-heap, so the biggest of the
+     * kept positions is always at the root and is the one replaced by a smaller position.
+     */
+    private static class TopHeap {
+        private final int[] heap;
+        private final IntBinaryOperator order;
+        private int size;
+
+        TopHeap(int capacity, IntBinaryOperator order) {
+            this.heap = new int[capacity];
+            this.order = order;
+        }
+
+        void offer(int position) {
+            if (size < heap.length) {
+                heap[size] = position;
+                siftUp(size++);
+            } else if (order.applyAsInt(position, heap[0]) < 0) {
+                heap[0] = position;
+                siftDown(0, size);
+            }
+        }
+
+        /**
+         * @return the kept positions in ascending order; the heap cannot be used afterwards
+         */
+        int[] sorted() {
+            for (int end = size - 1; end > 0; end--) {
+                swap(0, end);
+                siftDown(0, end);
+            }
+            return Arrays.copyOf(heap, size);
+        }
+
+        private void siftUp(int index) {
+            while (index > 0) {
+                int parent = (index - 1) / 2;
+                if (order.applyAsInt(heap[index], heap[parent]) <= 0) {
+                    return;
+                }
+                swap(index, parent);
+                index = parent;
+            }
+        }
+
+        private void siftDown(int index, int end) {
+            while (true) {
+                int largest = index;
+                int left = 2 * index + 1;
+                int right = left + 1;
+                if (left < end && order.applyAsInt(heap[left], heap[largest]) > 0) {
+                    largest = left;
+                }
+                if (right < end && order.applyAsInt(heap[right], heap[largest]) > 0) {
+                    largest = right;
+                }
+                if (largest == index) {
+                    return;
+                }
+                swap(index, largest);
+                index = largest;
+            }
+        }
+
+        private void swap(int i, int j) {
+            int value = heap[i];
+            heap[i] = heap[j];
+            heap[j] = value;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.sap.java8_hol.movies;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.IntSummaryStatistics;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Streaming access to the movies file: the movies are parsed lazily while the stream is consumed and are not kept
+ * anywhere, so the file can be much bigger than the heap. Only the actor registry keeps growing, with the number of
+ * distinct actors rather than with the number of movies.
+ * <p>
+ * Several queries can be answered in a single pass over the file with a {@link Scan}:
+ * <pre>
+ * MovieStream.Scan scan = new MovieStream.Scan();
+ * IntSummaryStatistics years = scan.yearStatistics();
+ * MovieStream.FirstMatch first = scan.findFirst(movie -&gt; movie.getTitle().contains("Rings"));
+ * scan.run(file);
+ * System.out.println(years.getMin() + " " + first.get());
+ * </pre>
+ */
+public class MovieStream {
+
+    private MovieStream() {
+    }
+
+    /**
+     * @return the movies of the file, the stream has to be closed to release the file
+     */
+    public static Stream<Movie> of(Path file) throws IOException {
+        return of(file, Charset.defaultCharset(), new ActorRegistry());
+    }
+
+    public static Stream<Movie> of(Path file, Charset charset, ActorRegistry actorRegistry) throws IOException {
+        // One parser per thread, so the stream can be made parallel as well
+        ThreadLocal<MovieLineParser> parser =
+                ThreadLocal.withInitial(() -> new MovieLineParser(charset, actorRegistry));
+        return Files.lines(file, charset)
+                .filter(line -> !line.isEmpty())
+                .map(line -> parser.get().parse(line));
+    }
+
+    /**
+     * Runs several queries in one pass over the movies. Every query is registered before the scan and its result is
+     * read after it.
+     */
+    public static class Scan {
+
+        private final List<Consumer<Movie>> queries = new ArrayList<>();
+
+        /**
+         * Registers a query that sees every movie.
+         */
+        public <T extends Consumer<Movie>> T add(T query) {
+            queries.add(query);
+            return query;
+        }
+
+        public IntSummaryStatistics yearStatistics() {
+            IntSummaryStatistics statistics = new IntSummaryStatistics();
+            add(movie -> statistics.accept(movie.getYear()));
+            return statistics;
+        }
+
+        public Count count(Predicate<Movie> predicate) {
+            return add(new Count(predicate));
+        }
+
+        public FirstMatch findFirst(Predicate<Movie> predicate) {
+            return add(new FirstMatch(predicate));
+        }
+
+        public List<Movie> filter(Predicate<Movie> predicate) {
+            List<Movie> result = new ArrayList<>();
+            add(movie -> {
+                if (predicate.test(movie)) {
+                    result.add(movie);
+                }
+            });
+            return result;
+        }
+
+        public void run(Stream<Movie> movies) {
+            try (Stream<Movie> scanned = movies) {
+                scanned.sequential().forEach(movie -> {
+                    for (Consumer<Movie> query : queries) {
+                        query.accept(movie);
+                    }
+                });
+            }
+        }
+
+        public void run(Path file) throws IOException {
+            run(of(file));
+        }
+    }
+
+    /**
+     * Counts the movies that match the predicate.
+     */
+    public static class Count implements Consumer<Movie> {
+
+        private final Predicate<Movie> predicate;
+        private long count;
+
+        Count(Predicate<Movie> predicate) {
+            this.predicate = predicate;
+        }
+
+        @Override
+        public void accept(Movie movie) {
+            if (predicate.test(movie)) {
+                count++;
+            }
+        }
+
+        public long get() {
+            return count;
+        }
+    }
+
+    /**
+     * Keeps the first movie that matches the predicate.
+     */
+    public static class FirstMatch implements Consumer<Movie> {
+
+        private final Predicate<Movie> predicate;
+        private Movie first;
+
+        FirstMatch(Predicate<Movie> predicate) {
+            this.predicate = predicate;
+        }
+
+        @Override
+        public void accept(Movie movie) {
+            if (first == null && predicate.test(movie)) {
+                first = movie;
+            }
+        }
+
+        public Optional<Movie> get() {
+            return Optional.ofNullable(first);
+        }
+    }
+}
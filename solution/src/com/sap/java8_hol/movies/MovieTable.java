@@ -0,0 +1,168 @@
+package com.sap.java8_hol.movies;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Column oriented copy of the movies for aggregations. The years and the durations are kept in int arrays and all the
+ * titles are stored one after another in a single char array, so the aggregations run over plain arrays instead of
+ * following a reference to every movie.
+ * <p>
+ * Row i of the table is the i-th movie of the list it was built from. The table is a snapshot: movies added to the
+ * list later should be appended to the table as well, changes of the movies themselves are not reflected.
+ */
+public class MovieTable {
+
+    private int size;
+    private int[] years;
+    private int[] durations;
+
+    // The title of row i is titleChars[titleOffsets[i]] .. titleChars[titleOffsets[i + 1] - 1]
+    private char[] titleChars;
+    private int[] titleOffsets;
+
+    public MovieTable() {
+        this(16);
+    }
+
+    private MovieTable(int capacity) {
+        years = new int[capacity];
+        durations = new int[capacity];
+        titleOffsets = new int[capacity + 1];
+        titleChars = new char[capacity * 16];
+    }
+
+    public static MovieTable of(List<Movie> movies) {
+        MovieTable table = new MovieTable(Math.max(movies.size(), 16));
+        movies.forEach(table::append);
+        return table;
+    }
+
+    public void append(Movie movie) {
+        if (size == years.length) {
+            int capacity = size * 2;
+            years = Arrays.copyOf(years, capacity);
+            durations = Arrays.copyOf(durations, capacity);
+            titleOffsets = Arrays.copyOf(titleOffsets, capacity + 1);
+        }
+        String title = movie.getTitle();
+        int titleStart = titleOffsets[size];
+        if (titleStart + title.length() > titleChars.length) {
+            titleChars = Arrays.copyOf(titleChars, Math.max(titleChars.length * 2, titleStart + title.length()));
+        }
+        title.getChars(0, title.length(), titleChars, titleStart);
+
+        years[size] = movie.getYear();
+        durations[size] = movie.getDuration();
+        titleOffsets[size + 1] = titleStart + title.length();
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getYear(int row) {
+        checkRow(row);
+        return years[row];
+    }
+
+    public int getDuration(int row) {
+        checkRow(row);
+        return durations[row];
+    }
+
+    public String getTitle(int row) {
+        checkRow(row);
+        return new String(titleChars, titleOffsets[row], titleOffsets[row + 1] - titleOffsets[row]);
+    }
+
+    public long countMovies(int year) {
+        int[] years = this.years;
+        long count = 0;
+        for (int i = 0; i < size; i++) {
+            count += years[i] == year ? 1 : 0;
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of the movies released between the two years, both inclusive
+     */
+    public long countMovies(int fromYear, int toYear) {
+        int[] years = this.years;
+        long count = 0;
+        for (int i = 0; i < size; i++) {
+            count += years[i] >= fromYear && years[i] <= toYear ? 1 : 0;
+        }
+        return count;
+    }
+
+    public int getMinYear() {
+        checkNotEmpty();
+        int[] years = this.years;
+        int min = Integer.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            min = Math.min(min, years[i]);
+        }
+        return min;
+    }
+
+    public int getMaxYear() {
+        checkNotEmpty();
+        int[] years = this.years;
+        int max = Integer.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            max = Math.max(max, years[i]);
+        }
+        return max;
+    }
+
+    public long getTotalDuration() {
+        int[] durations = this.durations;
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            total += durations[i];
+        }
+        return total;
+    }
+
+    public int getMaxDuration() {
+        checkNotEmpty();
+        int[] durations = this.durations;
+        int max = Integer.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            max = Math.max(max, durations[i]);
+        }
+        return max;
+    }
+
+    /**
+     * @return the number of the movies per year; element i is the count for the year {@code getMinYear() + i}
+     */
+    public int[] getYearHistogram() {
+        if (size == 0) {
+            return new int[0];
+        }
+        int minYear = getMinYear();
+        int[] histogram = new int[getMaxYear() - minYear + 1];
+        int[] years = this.years;
+        for (int i = 0; i < size; i++) {
+            histogram[years[i] - minYear]++;
+        }
+        return histogram;
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row: " + row + ", Size: " + size);
+        }
+    }
+
+    private void checkNotEmpty() {
+        if (size == 0) {
+            throw new NoSuchElementException("The table is empty");
+        }
+    }
+}
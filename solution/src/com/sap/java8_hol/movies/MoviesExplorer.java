@@ -1,6 +1,7 @@
 package com.sap.java8_hol.movies;
 
 import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.FileReader;
 import java.io.IOException;
 import java.nio.charset.Charset;
@@ -9,6 +10,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
@@ -19,26 +21,82 @@ import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IntSummaryStatistics;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class MoviesExplorer {
 
     public static void main(String[] args) throws Exception {
+        // Answer the queries that do not need the whole catalog in one pass, without loading it into memory
+        if (args.length > 0 && "--stream".equals(args[0])) {
+            printStreamingReport(Paths.get("resources", "movies-mpaa.txt"));
+            return;
+        }
+
         // 1) Load the movies
-        List<Movie> movies = new ArrayList<>();
-//        loadMoviesOld(Paths.get("resources", "movies-mpaa.txt"), movies);
-        loadMovies(Paths.get("resources", "movies-mpaa.txt"), movies);
+        // Keep the catalog and its indexes up to date while lines are appended to the movies file. The tailer
+        // continues where the text loader stopped, so the movies are parsed from the text here.
+        if (args.length > 0 && "--tail".equals(args[0])) {
+            List<Movie> movies = new ArrayList<>();
+            ActorRegistry actorRegistry = new ActorRegistry();
+            MovieLoader.LoadStatistics loadStatistics = new MovieLoader(actorRegistry)
+                    .load(Paths.get("resources", "movies-mpaa.txt"), movies);
+            System.err.println(loadStatistics);
+            tailMovies(Paths.get("resources", "movies-mpaa.txt"), movies, actorRegistry, loadStatistics.getBytes());
+            return;
+        }
+//        List<Movie> movies = new ArrayList<>();
+//        ActorRegistry actorRegistry = new ActorRegistry();
+//        loadMoviesOld(Paths.get("resources", "movies-mpaa.txt"), movies, actorRegistry);
+//        loadMovies(Paths.get("resources", "movies-mpaa.txt"), movies, actorRegistry);
+//        new MovieLoader(actorRegistry).load(Paths.get("resources", "movies-mpaa.txt"), movies);
+        // The parsed movies are kept in a snapshot next to the movies file, later runs map it instead of parsing the
+        // text again. The actors of the catalog are interned in its registry, which lives as long as the movies.
+        long loadStart = System.nanoTime();
+        MappedCatalog snapshot = CatalogSnapshot.loadOrBuild(Paths.get("resources", "movies-mpaa.txt"),
+                Paths.get("resources", "movies-mpaa.snapshot"));
+        ActorRegistry actorRegistry = snapshot.getActorRegistry();
+        List<Movie> movies = new ArrayList<>(snapshot.asList());
+        // The statistics go to the error stream, so the output stays the same
+        System.err.println("Loaded " + movies.size() + " movies from the snapshot in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - loadStart) + " ms");
+        // Answer all the queries in one traversal of the movies instead of one traversal per query
+        if (args.length > 0 && "--report".equals(args[0])) {
+            printReport(movies);
+            return;
+        }
+        // Answer the queries with parallel streams on a pool of their own, the parallelism can be the second argument
+        if (args.length > 0 && "--parallel".equals(args[0])) {
+            int parallelism = args.length > 1 ? Integer.parseInt(args[1]) : ParallelQueries.DEFAULT_PARALLELISM;
+            try (ParallelQueries queries = new ParallelQueries(movies, parallelism)) {
+                printParallelReport(queries);
+            }
+            return;
+        }
+        ActorIndex actorIndex = ActorIndex.build(movies, actorRegistry);
+        // Answer questions about the actors that play together over the co-star graph
+        if (args.length > 0 && "--costars".equals(args[0])) {
+            printCoStars(CostarGraph.build(actorIndex));
+            return;
+        }
+        TitleIndex titleIndex = new TitleIndex(movies);
+        MovieTable movieTable = MovieTable.of(movies);
+        YearIndex yearIndex = YearIndex.build(movies);
 
         // 2) Find the number of movies released in 2003
 //        long movies2003 = countMovies2003Old(movies);
-        long movies2003 = countMovies2003(movies);
+//        long movies2003 = countMovies2003(movies);
+//        long movies2003 = countMovies2003(movieTable);
+        // The queries are measured as stages when the instrumentation is enabled
+        long movies2003 = Instrumentation.stage("countMovies2003").measure(() -> countMovies2003(yearIndex));
         System.out.println("Number of movies released in 2003: " + movies2003);
 
         // 3) Find the first movie that contains Lord of the Rings
@@ -48,94 +106,178 @@ public class MoviesExplorer {
 //        } else {
 //            throw new IllegalArgumentException();
 //        }
-        Optional<Movie> firstLOTR = findFirstLordOfTheRingsMovie(movies);
+//        Optional<Movie> firstLOTR = findFirstLordOfTheRingsMovie(movies);
+        Optional<Movie> firstLOTR = Instrumentation.stage("findFirstLordOfTheRingsMovie")
+                .measure(() -> findFirstLordOfTheRingsMovie(titleIndex));
         firstLOTR.ifPresent(
                 movie -> System.out.println("The year of the first Lord of the Rings movie is: " + movie.getYear()));
         firstLOTR.orElseThrow(IllegalArgumentException::new);
 
         // 4) Display the movies sorted by the release year
 //        printMoviesSortedByReleaseOld(movies);
-        printMoviesSortedByRelease(movies);
+//        printMoviesSortedByRelease(movies);
+        // The long listings go through a buffered sink, which is flushed before the next System.out line
+        OutputSink out = OutputSink.standardOutput();
+//        printMoviesSortedByReleaseOld(movies, out);
+//        printMoviesSortedByRelease(movies, out);
+        printMovies(MovieSorter.sortByYear(movies), out);
+        out.flush();
 
         // 5) Find the first and the last year in the statistics
 //        int firstYear = getMinYearOld(movies);
-        int firstYear = getMinYear(movies);
+//        int firstYear = getMinYear(movies);
+        int firstYear = Instrumentation.stage("getMinYear").measure(() -> getMinYear(movieTable));
         System.out.println("First year in the statistics: " + firstYear);
 //        int lastYear = getMaxYearOld(movies);
-        int lastYear = getMaxYear(movies);
+//        int lastYear = getMaxYear(movies);
+        int lastYear = Instrumentation.stage("getMaxYear").measure(() -> getMaxYear(movieTable));
         System.out.println("First year in the statistics: " + lastYear);
 
         // 6) Print the movies grouped by year
 //        Map<Integer, List<Movie>> collect = getMoviesByYearOld(movies);
-        Map<Integer, List<Movie>> collect = getMoviesByYear(movies);
+//        Map<Integer, List<Movie>> collect = getMoviesByYear(movies);
+        Map<Integer, List<Movie>> collect = Instrumentation.stage("getMoviesByYear")
+                .measure(() -> getMoviesByYear(yearIndex));
         System.out.println(collect);
 
         // 7) Extract all the actors
 //        Set<Actor> actorsSet = getAllActorsOld(movies);
-        Set<Actor> actorsSet = getAllActors(movies);
-        System.out.println("Number of actors: " + actorsSet.size());
+//        Set<Actor> actorsSet = getAllActors(movies);
+//        System.out.println("Number of actors: " + actorsSet.size());
+        // The actors are interned while loading, so the registry already knows all of them
+        System.out.println("Number of actors: " + actorRegistry.size());
 
         // 8) Find all the movies with Kevin Spacey
 //        List<Movie> kevinSpaceyMovies = getAllKevinSpaceyMoviesOld(movies);
-        List<Movie> kevinSpaceyMovies = getAllKevinSpaceyMovies(movies);
+//        List<Movie> kevinSpaceyMovies = getAllKevinSpaceyMovies(movies);
+        List<Movie> kevinSpaceyMovies = Instrumentation.stage("getAllKevinSpaceyMovies")
+                .measure(() -> getAllKevinSpaceyMovies(actorIndex));
         System.out.println(kevinSpaceyMovies);
         
         // 9) Print movies projections
-        printMovieProjectionData(movies);
-    }
-
-    private static void addMovie(List<Movie> movies, String movieInfo) {
-        String elements[] = movieInfo.split("/");
-        String title = parseMovieTitle(elements);
-        String releaseYear = parseMovieReleaseYear(elements);
-        String duration = parseMovieDuration(elements);
+//        printMovieProjectionDataOld(movies, out);
+//        printMovieProjectionData(movies, out);
+        ProjectionScheduleGenerator.berlin().writeParallel(movies, out);
+        out.close();
 
-        Movie movie = new Movie(title, Integer.valueOf(releaseYear) , Integer.valueOf(duration));
-
-        for (int i = 2; i < elements.length; i++) {
-            String[] name = elements[i].split(", ");
-            String lastName = name[0].trim();
-            String firstName = "";
-            if (name.length > 1) {
-                firstName = name[1].trim();
-            }
-
-            Actor actor = new Actor(firstName, lastName);
-            movie.addActor(actor);
+        // The measurements go to the error stream, so the output stays the same
+        if (Instrumentation.ENABLED) {
+            System.err.print(Instrumentation.snapshot());
         }
+    }
 
-        movies.add(movie);
+    private static void addMovie(List<Movie> movies, MovieLineParser parser, String movieInfo) {
+        movies.add(parser.parse(movieInfo));
     }
+    
+    
+    static void printStreamingReport(Path filePath) throws IOException {
+        Actor kevinSpacey = new Actor("Kevin", "Spacey");
+        MovieStream.Scan scan = new MovieStream.Scan();
+        MovieStream.Count movies2003 = scan.count(movie -> movie.getYear() == 2003);
+        MovieStream.FirstMatch firstLOTR = scan.findFirst(movie -> movie.getTitle().contains("Lord of the Rings"));
+        IntSummaryStatistics years = scan.yearStatistics();
+        List<Movie> kevinSpaceyMovies = scan.filter(movie -> movie.getActors().contains(kevinSpacey));
+        scan.run(filePath);
 
-    private static String parseMovieTitle(String[] elements) {
-        return elements[0].substring(0, elements[0].toString().lastIndexOf("(")).trim();
+        System.out.println("Number of movies released in 2003: " + movies2003.get());
+        firstLOTR.get().ifPresent(
+                movie -> System.out.println("The year of the first Lord of the Rings movie is: " + movie.getYear()));
+        System.out.println("First year in the statistics: " + years.getMin());
+        System.out.println("First year in the statistics: " + years.getMax());
+        System.out.println(kevinSpaceyMovies);
+    }
+    
+    static void printParallelReport(ParallelQueries queries) {
+        System.out.println("Number of movies released in 2003: " + queries.countMovies(2003));
+        Optional<Movie> firstLOTR = queries.findFirstMovieWithTitle("Lord of the Rings");
+        firstLOTR.ifPresent(
+                movie -> System.out.println("The year of the first Lord of the Rings movie is: " + movie.getYear()));
+        IntSummaryStatistics years = queries.getYearStatistics();
+        System.out.println("First year in the statistics: " + years.getMin());
+        System.out.println("Last year in the statistics: " + years.getMax());
+        System.out.println("Number of years: " + queries.getMoviesByYear().size());
+        System.out.println("Number of actors: " + queries.getAllActors().size());
+        System.out.println(queries.getMoviesWithActor(new Actor("Kevin", "Spacey")));
     }
+    
+    @SuppressWarnings("try")
+    static void tailMovies(Path filePath, List<Movie> movies, ActorRegistry actorRegistry, long loadedBytes)
+            throws IOException, InterruptedException {
+        // A last line without a line terminator may still be being written, so it is left to the tailer, which loads
+        // it again once it is complete
+        long tailOffset = MovieFileTailer.endOfLastLine(filePath, loadedBytes);
+        if (tailOffset < loadedBytes) {
+            movies.remove(movies.size() - 1);
+        }
+        MovieCatalog catalog = new MovieCatalog(movies);
+        // All the indexes are built from the frozen movies of a version of the catalog, and rebuilt for every new one
+        CatalogIndexes[] indexes = { CatalogIndexes.build(catalog.current(), actorRegistry) };
 
-    private static String parseMovieReleaseYear(String[] elements) {
-        String releaseYear = elements[0].substring(elements[0].toString().lastIndexOf("(") + 1,
-                elements[0].toString().lastIndexOf(")"));
-        if (releaseYear.contains(",")) {
-            releaseYear = releaseYear.substring(0, releaseYear.indexOf(","));
+        // The listeners are called in this thread, one after the other
+        try (MovieFileTailer tailer = new MovieFileTailer(filePath, tailOffset, actorRegistry);
+                Closeable dump = Instrumentation.dumpPeriodically(Duration.ofMinutes(1), System.err)) {
+            tailer.addListener(appended -> catalog.apply(batch -> appended.forEach(batch::add)));
+            tailer.addListener(appended -> indexes[0] = CatalogIndexes.build(catalog.current(), actorRegistry));
+            tailer.addListener(appended -> System.out.println("Appended " + appended.size() + " movies: "
+                    + indexes[0].getMovieTable().size() + " movies in "
+                    + indexes[0].getYearIndex().getMoviesByYear().size() + " years, "
+                    + indexes[0].getActorIndex().getActorCount() + " actors"));
+            tailer.watch();
         }
-        return releaseYear;
     }
     
-    private static String parseMovieDuration(String[] elements) {
-        String duration = elements[1];
-        return duration;
+    static void printCoStars(CostarGraph graph) {
+        Actor kevinSpacey = new Actor("Kevin", "Spacey");
+        Actor elijahWood = new Actor("Elijah", "Wood");
+        System.out.println("Number of co-stars of Kevin Spacey: " + graph.getCoStars(kevinSpacey).size());
+        System.out.println("Number of actors at most 2 co-stars away from Kevin Spacey: "
+                + graph.getNeighbourhood(kevinSpacey, 2).size());
+        Optional<CostarGraph.Path> path = graph.findShortestPath(kevinSpacey, elijahWood);
+        System.out.println(path.map(p -> "Shortest path from Kevin Spacey to Elijah Wood: " + p)
+                .orElse("Kevin Spacey and Elijah Wood are not connected"));
     }
     
+    static void printReport(List<Movie> movies) {
+        Actor kevinSpacey = new Actor("Kevin", "Spacey");
+        MoviesReport report = new MoviesReport();
+        MoviesReport.Result<Long> movies2003 = report.add(MoviesReport.counting(movie -> movie.getYear() == 2003));
+        MoviesReport.Result<Optional<Movie>> firstLOTR = report.add(
+                MoviesReport.findFirst(movie -> movie.getTitle().contains("Lord of the Rings")));
+        MoviesReport.Result<List<Movie>> sortedMovies = report.add(
+                MoviesReport.sorted(Comparator.comparingInt(Movie::getYear)));
+        MoviesReport.Result<IntSummaryStatistics> years = report.add(Collectors.summarizingInt(Movie::getYear));
+        MoviesReport.Result<Map<Integer, List<Movie>>> moviesByYear = report.add(
+                Collectors.groupingBy(Movie::getYear));
+        MoviesReport.Result<Set<Actor>> actors = report.add(MoviesReport.actors());
+        MoviesReport.Result<List<Movie>> kevinSpaceyMovies = report.add(
+                MoviesReport.filtering(movie -> movie.getActors().contains(kevinSpacey)));
+        report.run(movies.parallelStream());
+
+        System.out.println("Number of movies released in 2003: " + movies2003.get());
+        firstLOTR.get().ifPresent(
+                movie -> System.out.println("The year of the first Lord of the Rings movie is: " + movie.getYear()));
+        firstLOTR.get().orElseThrow(IllegalArgumentException::new);
+        sortedMovies.get().forEach(System.out::println);
+        System.out.println("First year in the statistics: " + years.get().getMin());
+        System.out.println("First year in the statistics: " + years.get().getMax());
+        System.out.println(moviesByYear.get());
+        System.out.println("Number of actors: " + actors.get().size());
+        System.out.println(kevinSpaceyMovies.get());
+    }
     
-    private static void loadMoviesOld(Path filePath, List<Movie> movies) throws IOException {
+    static void loadMoviesOld(Path filePath, List<Movie> movies, ActorRegistry actorRegistry) throws IOException {
+        MovieLineParser parser = new MovieLineParser(Charset.defaultCharset(), actorRegistry);
         try (BufferedReader moviesFileReader = new BufferedReader(new FileReader(filePath.toString()))) {
             String movieLine;
             while ((movieLine = moviesFileReader.readLine()) != null) {
-                addMovie(movies, movieLine);
+                addMovie(movies, parser, movieLine);
             }
         }
     }
     
-    private static void loadMovies(Path filePath, List<Movie> movies) throws IOException {
+    static void loadMovies(Path filePath, List<Movie> movies, ActorRegistry actorRegistry) throws IOException {
+        MovieLineParser parser = new MovieLineParser(Charset.defaultCharset(), actorRegistry);
         // От документацията на java.util.Stream:
         // Streams have a BaseStream.close() method and implement AutoCloseable,
         // but nearly all stream instances do not actually need to be closed after use.
@@ -144,14 +286,14 @@ public class MoviesExplorer {
         // which require no special resource management.
         // (If a stream does require closing, it can be declared as a resource in a try-with-resources statement.) 
         try (Stream<String> lines = Files.lines(filePath , Charset.defaultCharset())) {
-            lines.forEach(line -> addMovie(movies, line));
+            lines.forEach(line -> addMovie(movies, parser, line));
         }catch( Exception e){
         	e.printStackTrace();
         }
     }
     
     
-    private static long countMovies2003Old(List<Movie> movies) {
+    static long countMovies2003Old(List<Movie> movies) {
         long count = 0;
         for (Movie movie : movies) {
             if (movie.getYear() == 2003) {
@@ -161,14 +303,22 @@ public class MoviesExplorer {
         return count;
     }
     
-    private static long countMovies2003(List<Movie> movies) {
+    static long countMovies2003(List<Movie> movies) {
         return movies.stream()
                 .filter(movie -> movie.getYear() == 2003)
                 .count();
     }
     
+    static long countMovies2003(MovieTable movieTable) {
+        return movieTable.countMovies(2003);
+    }
+    
+    static long countMovies2003(YearIndex yearIndex) {
+        return yearIndex.countMovies(2003);
+    }
+    
     
-    private static Movie findFirstLordOfTheRingsMovieOld(List<Movie> movies) {
+    static Movie findFirstLordOfTheRingsMovieOld(List<Movie> movies) {
         for (Movie movie : movies) {
             if (movie.getTitle().contains("Lord of the Rings")) {
                 return movie;
@@ -177,14 +327,24 @@ public class MoviesExplorer {
         return null;
     }
     
-    private static Optional<Movie> findFirstLordOfTheRingsMovie(List<Movie> movies) {
+    static Optional<Movie> findFirstLordOfTheRingsMovie(List<Movie> movies) {
         return movies.stream()
                 .filter(movie -> movie.getTitle().contains("Lord of the Rings"))
                 .findFirst();
     }
+    
+    static Optional<Movie> findFirstLordOfTheRingsMovie(TitleIndex titleIndex) {
+        return titleIndex.findFirst("Lord of the Rings", false);
+    }
 
 
-    private static void printMoviesSortedByReleaseOld(List<Movie> movies) {
+    static void printMoviesSortedByReleaseOld(List<Movie> movies) {
+        try (OutputSink out = OutputSink.standardOutput()) {
+            printMoviesSortedByReleaseOld(movies, out);
+        }
+    }
+    
+    static void printMoviesSortedByReleaseOld(List<Movie> movies, OutputSink out) {
         List<Movie> sortedMovies = new ArrayList<Movie>(movies);
         Collections.sort(sortedMovies, new Comparator<Movie>() {
                 @Override
@@ -193,18 +353,33 @@ public class MoviesExplorer {
                 }
             });
         for (Movie movie : sortedMovies) {
-            System.out.println(movie);
+            movie.appendTo(out).newLine();
         }
     }
     
-    private static void printMoviesSortedByRelease(List<Movie> movies) {
+    static void printMoviesSortedByRelease(List<Movie> movies) {
+        try (OutputSink out = OutputSink.standardOutput()) {
+            printMoviesSortedByRelease(movies, out);
+        }
+    }
+    
+    static void printMoviesSortedByRelease(List<Movie> movies, OutputSink out) {
         movies.stream()
                 .sorted((m1, m2) -> m1.getYear() - m2.getYear())
-                .forEach(System.out::println);
+                .forEachOrdered(movie -> movie.appendTo(out).newLine());
+    }
+    
+    @SuppressWarnings("try")
+    static void printMovies(List<Movie> movies, OutputSink out) {
+        try (Instrumentation.Span span = Instrumentation.PRINT_MOVIES.start()) {
+            for (Movie movie : movies) {
+                movie.appendTo(out).newLine();
+            }
+        }
     }
 
     
-    private static int getMinYearOld(List<Movie> movies) {
+    static int getMinYearOld(List<Movie> movies) {
         int minYear = Integer.MAX_VALUE;
         for (Movie movie : movies) {
             if (movie.getYear() < minYear) {
@@ -214,14 +389,18 @@ public class MoviesExplorer {
         return minYear;
     }
     
-    private static int getMinYear(List<Movie> movies) {
+    static int getMinYear(List<Movie> movies) {
         return movies.stream()
                 .mapToInt(Movie::getYear)
                 .min()
                 .getAsInt();
     }
     
-    private static int getMaxYearOld(List<Movie> movies) {
+    static int getMinYear(MovieTable movieTable) {
+        return movieTable.getMinYear();
+    }
+    
+    static int getMaxYearOld(List<Movie> movies) {
         int maxYear = 0;
         for (Movie movie : movies) {
             if (movie.getYear() > maxYear) {
@@ -231,15 +410,19 @@ public class MoviesExplorer {
         return maxYear;
     }
     
-    private static int getMaxYear(List<Movie> movies) {
+    static int getMaxYear(List<Movie> movies) {
         return movies.stream()
                 .mapToInt(Movie::getYear)
                 .max()
                 .getAsInt();
     }
+    
+    static int getMaxYear(MovieTable movieTable) {
+        return movieTable.getMaxYear();
+    }
 
     
-    private static Map<Integer, List<Movie>> getMoviesByYearOld(List<Movie> movies) {
+    static Map<Integer, List<Movie>> getMoviesByYearOld(List<Movie> movies) {
         Map<Integer, List<Movie>> result = new HashMap<>();
         for (Movie movie : movies) {
             List<Movie> moviesInSameYear = result.get(movie.getYear());
@@ -252,13 +435,17 @@ public class MoviesExplorer {
         return result;
     }
     
-    private static Map<Integer, List<Movie>> getMoviesByYear(List<Movie> movies) {
+    static Map<Integer, List<Movie>> getMoviesByYear(List<Movie> movies) {
         return movies.stream()
                 .collect(Collectors.groupingBy(Movie::getYear));
     }
+    
+    static Map<Integer, List<Movie>> getMoviesByYear(YearIndex yearIndex) {
+        return yearIndex.getMoviesByYear();
+    }
 
     
-    private static Set<Actor> getAllActorsOld(List<Movie> movies) {
+    static Set<Actor> getAllActorsOld(List<Movie> movies) {
         Set<Actor> actors = new HashSet<>();
         for (Movie movie : movies) {
             actors.addAll(movie.getActors());
@@ -266,14 +453,14 @@ public class MoviesExplorer {
         return actors;
     }
     
-    private static Set<Actor> getAllActors(List<Movie> movies) {
+    static Set<Actor> getAllActors(List<Movie> movies) {
         return movies.stream()
                 .flatMap(movie -> movie.getActors().stream())
                 .collect(Collectors.toSet());
     }
     
     
-    private static List<Movie> getAllKevinSpaceyMoviesOld(List<Movie> movies) {
+    static List<Movie> getAllKevinSpaceyMoviesOld(List<Movie> movies) {
         List<Movie> result = new ArrayList<>();
         Actor kevinSpacey = new Actor("Kevin", "Spacey");
         for (Movie movie : movies) {
@@ -284,7 +471,7 @@ public class MoviesExplorer {
         return result;
     }
     
-    private static List<Movie> getAllKevinSpaceyMovies(List<Movie> movies) {
+    static List<Movie> getAllKevinSpaceyMovies(List<Movie> movies) {
         Actor kevinSpacey = new Actor("Kevin", "Spacey");
         return movies.stream()
                 .filter(movie -> movie.getActors().stream()
@@ -292,13 +479,38 @@ public class MoviesExplorer {
                 .collect(Collectors.toList());
     }
     
+    static List<Movie> getAllKevinSpaceyMovies(ActorIndex actorIndex) {
+        return actorIndex.findMoviesWithActor(new Actor("Kevin", "Spacey"));
+    }
+    
+    static long countLongKevinSpaceyMovies2000To2005(List<Movie> movies) {
+        Actor kevinSpacey = new Actor("Kevin", "Spacey");
+        return movies.stream()
+                .filter(movie -> movie.getYear() >= 2000 && movie.getYear() <= 2005)
+                .filter(movie -> movie.getDuration() > 150)
+                .filter(movie -> movie.getActors().contains(kevinSpacey))
+                .count();
+    }
+    
+    static long countLongKevinSpaceyMovies2000To2005(BitmapIndex bitmapIndex) {
+        return bitmapIndex.years(2000, 2005)
+                .and(bitmapIndex.durations(151, Integer.MAX_VALUE))
+                .andCardinality(bitmapIndex.actor(new Actor("Kevin", "Spacey")));
+    }
+    
+    
+    static void printMovieProjectionDataOld(List<Movie> movies) {
+        try (OutputSink out = OutputSink.standardOutput()) {
+            printMovieProjectionDataOld(movies, out);
+        }
+    }
     
-    private static void printMovieProjectionDataOld(List<Movie>movies){
+    static void printMovieProjectionDataOld(List<Movie>movies, OutputSink out){
     	try {
 			SimpleDateFormat formatter = new SimpleDateFormat("dd.MM.yyyy hh:mm:ss a");	
 			String dateInString = "01.01.2017 5:00:00 PM";
 			Date startDateTime = formatter.parse(dateInString);				
-			System.out.println("Date : " + formatter.format(startDateTime));
+			out.append("Date : ").append(formatter.format(startDateTime)).newLine();
 	
 			// To TimeZone Europe/Berlin
 			SimpleDateFormat sdfBerlin = new SimpleDateFormat("dd-M-yyyy hh:mm:ss a");
@@ -313,9 +525,11 @@ public class MoviesExplorer {
 		          String startDateTimeInBerlin = sdfBerlin.format(startDateTime); 
 		          String endDateTimeInBerlin = sdfBerlin.format(endDateTime);
 		          
-		          System.out.println( movie);
-		          System.out.println("Sofia Start Date and Time :"+ formatter.format(startDateTime)  + " End Date and Time : "+ formatter.format(endDateTime));
-		          System.out.println("Berlin Start Date and Time :"+ startDateTimeInBerlin  + " Date and End Time : "+ endDateTimeInBerlin);
+		          movie.appendTo(out).newLine();
+		          out.append("Sofia Start Date and Time :").append(formatter.format(startDateTime))
+		                  .append(" End Date and Time : ").append(formatter.format(endDateTime)).newLine();
+		          out.append("Berlin Start Date and Time :").append(startDateTimeInBerlin)
+		                  .append(" Date and End Time : ").append(endDateTimeInBerlin).newLine();
 		          
 		         // calculate the next day
 		          startDateTime = new Date( startDateTime.getTime() + 1 * 24 * 60 * 60 * 1000); // add 24 hours
@@ -331,7 +545,13 @@ public class MoviesExplorer {
     	
     }
     
-    private static void printMovieProjectionData(List<Movie>movies){
+    static void printMovieProjectionData(List<Movie> movies) {
+        try (OutputSink out = OutputSink.standardOutput()) {
+            printMovieProjectionData(movies, out);
+        }
+    }
+    
+    static void printMovieProjectionData(List<Movie>movies, OutputSink out){
     	ZoneId zoneIDBerlin = ZoneId.of("Europe/Berlin");
     	LocalDateTime  startDateTime = LocalDateTime.of(2017, 1, 1, 17, 0) ;
     	DateTimeFormatter formater = DateTimeFormatter.ofPattern("dd-M-yyyy hh:mm:ss a"); 
@@ -340,14 +560,21 @@ public class MoviesExplorer {
           int duration = movie.getDuration();
           LocalDateTime  endDateTime = startDateTime.plusMinutes(duration);
           
-          System.out.println( movie);
-          System.out.println("Sofia Start Date and Time :"+ startDateTime.format(formater)  + " End Date and Time : "+ endDateTime.format(formater));
-          System.out.println("Berlin Start Date and Time :"+ ZonedDateTime.of(startDateTime, zoneIDBerlin).format(DateTimeFormatter.ISO_INSTANT)+ 
-        		             " Date and End Time : "+  ZonedDateTime.of(endDateTime, zoneIDBerlin).format(DateTimeFormatter.ISO_INSTANT));
+          movie.appendTo(out).newLine();
+          out.append("Sofia Start Date and Time :");
+          formater.formatTo(startDateTime, out);
+          out.append(" End Date and Time : ");
+          formater.formatTo(endDateTime, out);
+          out.newLine();
+          out.append("Berlin Start Date and Time :");
+          DateTimeFormatter.ISO_INSTANT.formatTo(ZonedDateTime.of(startDateTime, zoneIDBerlin), out);
+          out.append(" Date and End Time : ");
+          DateTimeFormatter.ISO_INSTANT.formatTo(ZonedDateTime.of(endDateTime, zoneIDBerlin), out);
+          out.newLine();
           
           startDateTime = startDateTime.plusDays(1);          
           
-          System.out.println();
+          out.newLine();
           
         }
     }
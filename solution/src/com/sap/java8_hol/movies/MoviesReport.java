@@ -0,0 +1,173 @@
+package com.sap.java8_hol.movies;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
+import java.util.stream.Stream;
+
+/**
+ * Runs any number of queries over the movies in a single traversal. Every query is a {@link Collector}; the report
+ * combines them into one collector that keeps the partial result of every query side by side, so a parallel stream
+ * builds the partial results per thread and merges them the same way a single collector would be merged.
+ * <pre>
+ * MoviesReport report = new MoviesReport();
+ * MoviesReport.Result&lt;Long&gt; count2003 = report.add(MoviesReport.counting(movie -&gt; movie.getYear() == 2003));
+ * MoviesReport.Result&lt;IntSummaryStatistics&gt; years = report.add(Collectors.summarizingInt(Movie::getYear));
+ * report.run(movies.parallelStream());
+ * </pre>
+ * Queries that depend on the order of the movies (first match, sorting with equal keys) keep the encounter order of
+ * the stream, as long as the stream is ordered.
+ */
+public class MoviesReport {
+
+    private final List<Collector<Movie, Object, Object>> queries = new ArrayList<>();
+    private Object[] results;
+
+    /**
+     * Registers a query. Its result is available from the returned handle after the report is run.
+     */
+    @SuppressWarnings("unchecked")
+    public <R> Result<R> add(Collector<Movie, ?, R> query) {
+        if (results != null) {
+            throw new IllegalStateException("The report has already been run");
+        }
+        queries.add((Collector<Movie, Object, Object>) query);
+        return new Result<>(queries.size() - 1);
+    }
+
+    public void run(Stream<Movie> movies) {
+        results = movies.collect(all());
+    }
+
+    /**
+     * @return a collector that runs all the registered queries together
+     */
+    private Collector<Movie, Object[], Object[]> all() {
+        List<Collector<Movie, Object, Object>> collectors = new ArrayList<>(queries);
+        int size = collectors.size();
+
+        Supplier<Object[]> supplier = () -> {
+            Object[] containers = new Object[size];
+            for (int i = 0; i < size; i++) {
+                containers[i] = collectors.get(i).supplier().get();
+            }
+            return containers;
+        };
+        BiConsumer<Object[], Movie> accumulator = (containers, movie) -> {
+            for (int i = 0; i < size; i++) {
+                collectors.get(i).accumulator().accept(containers[i], movie);
+            }
+        };
+        BinaryOperator<Object[]> combiner = (left, right) -> {
+            for (int i = 0; i < size; i++) {
+                left[i] = collectors.get(i).combiner().apply(left[i], right[i]);
+            }
+            return left;
+        };
+        Function<Object[], Object[]> finisher = containers -> {
+            for (int i = 0; i < size; i++) {
+                containers[i] = collectors.get(i).finisher().apply(containers[i]);
+            }
+            return containers;
+        };
+        return Collector.of(supplier, accumulator, combiner, finisher);
+    }
+
+    /**
+     * @return the number of the movies that match the predicate
+     */
+    public static Collector<Movie, ?, Long> counting(Predicate<Movie> predicate) {
+        return Collector.of(() -> new long[1],
+                (count, movie) -> count[0] += predicate.test(movie) ? 1 : 0,
+                (left, right) -> {
+                    left[0] += right[0];
+                    return left;
+                },
+                count -> count[0]);
+    }
+
+    /**
+     * @return the first movie, in encounter order, that matches the predicate
+     */
+    public static Collector<Movie, ?, Optional<Movie>> findFirst(Predicate<Movie> predicate) {
+        return Collector.of(() -> new Movie[1],
+                (first, movie) -> {
+                    if (first[0] == null && predicate.test(movie)) {
+                        first[0] = movie;
+                    }
+                },
+                (left, right) -> left[0] != null ? left : right,
+                first -> Optional.ofNullable(first[0]));
+    }
+
+    /**
+     * @return the movies that match the predicate, in encounter order
+     */
+    public static Collector<Movie, ?, List<Movie>> filtering(Predicate<Movie> predicate) {
+        return Collector.of(ArrayList::new,
+                (List<Movie> result, Movie movie) -> {
+                    if (predicate.test(movie)) {
+                        result.add(movie);
+                    }
+                },
+                (left, right) -> {
+                    left.addAll(right);
+                    return left;
+                });
+    }
+
+    /**
+     * @return all the movies sorted with a stable sort
+     */
+    public static Collector<Movie, ?, List<Movie>> sorted(Comparator<? super Movie> comparator) {
+        return Collector.of(ArrayList::new, (List<Movie> result, Movie movie) -> result.add(movie),
+                (left, right) -> {
+                    left.addAll(right);
+                    return left;
+                },
+                (List<Movie> result) -> {
+                    result.sort(comparator);
+                    return result;
+                });
+    }
+
+    /**
+     * @return the distinct actors of all the movies
+     */
+    public static Collector<Movie, ?, Set<Actor>> actors() {
+        return Collector.of(HashSet::new, (Set<Actor> actors, Movie movie) -> actors.addAll(movie.getActors()),
+                (left, right) -> {
+                    left.addAll(right);
+                    return left;
+                });
+    }
+
+    /**
+     * Handle to the result of a single query of the report.
+     */
+    public class Result<R> {
+
+        private final int index;
+
+        private Result(int index) {
+            this.index = index;
+        }
+
+        @SuppressWarnings("unchecked")
+        public R get() {
+            if (results == null) {
+                throw new IllegalStateException("The report has not been run yet");
+            }
+            return (R) results[index];
+        }
+    }
+}
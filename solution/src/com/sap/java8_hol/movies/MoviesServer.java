@@ -0,0 +1,407 @@
+package com.sap.java8_hol.movies;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves the queries of the movies explorer as JSON over HTTP, with the HTTP server of the JDK:
+ * <pre>
+ * GET /movies/count?year=2003            {"count":...}
+ * GET /movies/count?from=2000&amp;to=2005
+ * GET /movies/search?title=Lord&amp;limit=10   [movie, ...]
+ * GET /movies/actor?firstName=Kevin&amp;lastName=Spacey&amp;limit=10
+ * GET /movies/years                      {"min":...,"max":...}
+ * GET /movies/by-year?from=2000&amp;to=2005   {"2000":[movie, ...], ...}
+ * GET /movies/filter?from=2000&amp;to=2005&amp;minDuration=151&amp;firstName=Kevin&amp;lastName=Spacey&amp;count=true
+ * </pre>
+ * The filter combines any of its conditions with the {@link BitmapIndex}; it returns the count only, or up to
+ * {@code limit} movies. The first name of an actor is left out or empty for the actors known by one name.
+ * The queries are answered from the indexes of the current version of a {@link MovieCatalog}, through a
+ * {@link QueryCache}: the searches are cached per version, while the counts and the years are read from the indexes
+ * directly. The indexes of a version are read-only and need no locking. The responses are streamed: they are
+ * written with a buffered {@link OutputSink} while the movies are visited, and sent in chunks, so even the grouping
+ * of the whole catalog is never built as one string.
+ * <p>
+ * The exchanges are handled by a fixed pool of threads with a bounded queue. When the queue is full, the thread that
+ * accepts the connections handles the exchange itself and stops accepting new ones, which pushes back on the
+ * clients instead of queueing without limit.
+ */
+public class MoviesServer implements Closeable {
+
+    private static final int QUEUE_SIZE = 1024;
+    private static final int BACKLOG = 1024;
+    private static final int RESPONSE_BUFFER_SIZE = 16 * 1024;
+    private static final int DEFAULT_LIMIT = 100;
+    private static final int CACHE_SIZE = 1024;
+    private static final Duration CACHE_TIME_TO_LIVE = Duration.ofMinutes(10);
+
+    static {
+        // The last chunk of a response is small and would wait for the delayed ACK of the client
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final QueryCache cache;
+
+    private final HttpServer server;
+    private final ThreadPoolExecutor executor;
+
+    public MoviesServer(List<Movie> movies, ActorRegistry actorRegistry, InetSocketAddress address)
+            throws IOException {
+        this(movies, actorRegistry, address, 2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates the server and binds it to the address, {@link #start()} starts serving.
+     * @param threads the number of threads that handle the exchanges
+     */
+    public MoviesServer(List<Movie> movies, ActorRegistry actorRegistry, InetSocketAddress address, int threads)
+            throws IOException {
+        this(new MovieCatalog(movies), actorRegistry, address, threads);
+    }
+
+    /**
+     * Creates a server for a catalog that can change while it is served, every request sees its current version.
+     * @param actorRegistry the registry that the actors of all the movies of the catalog are interned in
+     */
+    public MoviesServer(MovieCatalog catalog, ActorRegistry actorRegistry, InetSocketAddress address, int threads)
+            throws IOException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("The server needs at least one thread: " + threads);
+        }
+        cache = new QueryCache(catalog, actorRegistry, CACHE_SIZE, CACHE_TIME_TO_LIVE);
+        // The indexes of the first version are built before the first request
+        cache.getIndexes();
+
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE_SIZE), threadFactory(), new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.prestartAllCoreThreads();
+
+        server = HttpServer.create(address, BACKLOG);
+        server.setExecutor(executor);
+        endpoint("/movies/count", this::count);
+        endpoint("/movies/search", this::search);
+        endpoint("/movies/actor", this::moviesWithActor);
+        endpoint("/movies/years", this::years);
+        endpoint("/movies/by-year", this::moviesByYear);
+        endpoint("/movies/filter", this::filter);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        // Later starts map the snapshot of the parsed movies instead of parsing the movies file again
+        MappedCatalog snapshot = CatalogSnapshot.loadOrBuild(Paths.get("resources", "movies-mpaa.txt"),
+                Paths.get("resources", "movies-mpaa.snapshot"));
+        ActorRegistry actorRegistry = snapshot.getActorRegistry();
+        List<Movie> movies = new ArrayList<>(snapshot.asList());
+        MoviesServer server = new MoviesServer(movies, actorRegistry, new InetSocketAddress(port));
+        server.start();
+        System.out.println("Serving " + movies.size() + " movies on http://localhost:" + server.getPort() + "/movies");
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * @return the port the server is bound to, also when it was created with port 0
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops accepting exchanges, lets the current ones finish for up to a second and stops the threads.
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return the counters of the cache of the queries
+     */
+    public QueryCache.Statistics getCacheStatistics() {
+        return cache.getStatistics();
+    }
+
+    private Response count(Map<String, String> parameters) {
+        YearIndex yearIndex = cache.getIndexes().getYearIndex();
+        long count;
+        if (parameters.containsKey("year")) {
+            count = yearIndex.countMovies(intParameter(parameters, "year"));
+        } else {
+            count = yearIndex.countMovies(intParameter(parameters, "from"), intParameter(parameters, "to"));
+        }
+        return out -> out.append("{\"count\":").append(Long.toString(count)).append('}');
+    }
+
+    private Response search(Map<String, String> parameters) {
+        String title = parameter(parameters, "title");
+        List<Movie> movies = cache.findMoviesWithTitle(title, limitParameter(parameters));
+        return out -> appendMovies(movies, out);
+    }
+
+    private Response moviesWithActor(Map<String, String> parameters) {
+        Actor actor = actorParameter(parameters);
+        int limit = limitParameter(parameters);
+        List<Movie> movies = cache.getMoviesWithActor(actor);
+        return out -> appendMovies(movies.subList(0, Math.min(limit, movies.size())), out);
+    }
+
+    private Response years(Map<String, String> parameters) {
+        YearIndex yearIndex = cache.getIndexes().getYearIndex();
+        return out -> out.append("{\"min\":").append(yearIndex.getMinYear())
+                .append(",\"max\":").append(yearIndex.getMaxYear()).append('}');
+    }
+
+    private Response moviesByYear(Map<String, String> parameters) {
+        YearIndex yearIndex = cache.getIndexes().getYearIndex();
+        int from = intParameter(parameters, "from", yearIndex.getMinYear());
+        int to = intParameter(parameters, "to", yearIndex.getMaxYear());
+        return out -> {
+            out.append('{');
+            boolean first = true;
+            for (int year = Math.max(from, yearIndex.getMinYear()); year <= Math.min(to, yearIndex.getMaxYear());
+                    year++) {
+                List<Movie> movies = yearIndex.moviesInYear(year);
+                if (!movies.isEmpty()) {
+                    if (!first) {
+                        out.append(',');
+                    }
+                    first = false;
+                    out.append('"').append(year).append("\":");
+                    appendMovies(movies, out);
+                }
+            }
+            out.append('}');
+        };
+    }
+
+    private Response filter(Map<String, String> parameters) {
+        Actor actor = null;
+        if (parameters.containsKey("firstName") || parameters.containsKey("lastName")) {
+            actor = actorParameter(parameters);
+        }
+        List<Movie> movies = cache.filter(
+                intParameter(parameters, "from", Integer.MIN_VALUE),
+                intParameter(parameters, "to", Integer.MAX_VALUE),
+                intParameter(parameters, "minDuration", Integer.MIN_VALUE),
+                intParameter(parameters, "maxDuration", Integer.MAX_VALUE),
+                actor);
+        if (Boolean.parseBoolean(parameters.get("count"))) {
+            int count = movies.size();
+            return out -> out.append("{\"count\":").append(count).append('}');
+        }
+        int limit = limitParameter(parameters);
+        return out -> appendMovies(movies.subList(0, Math.min(limit, movies.size())), out);
+    }
+
+    /**
+     * A response that is checked and ready to be written. The parameters are checked before the status is sent, so
+     * an invalid request can still get a 400.
+     */
+    private interface Response extends Consumer<OutputSink> {
+    }
+
+    private interface Endpoint {
+        Response query(Map<String, String> parameters);
+    }
+
+    @SuppressWarnings("try")
+    private void endpoint(String path, Endpoint endpoint) {
+        Instrumentation.Stage stage = Instrumentation.stage("GET " + path);
+        server.createContext(path, exchange -> {
+            try (Instrumentation.Span span = stage.start()) {
+                if (!"GET".equals(exchange.getRequestMethod())) {
+                    exchange.getResponseHeaders().set("Allow", "GET");
+                    sendError(exchange, 405, "Only GET is supported");
+                } else if (!path.equals(exchange.getRequestURI().getPath())) {
+                    sendError(exchange, 404, "Not found: " + exchange.getRequestURI().getPath());
+                } else {
+                    Response response;
+                    try {
+                        response = endpoint.query(parameters(exchange.getRequestURI().getRawQuery()));
+                    } catch (IllegalArgumentException e) {
+                        sendError(exchange, 400, e.getMessage());
+                        return;
+                    }
+                    send(exchange, 200, response);
+                }
+            } finally {
+                exchange.close();
+            }
+        });
+    }
+
+    private static void send(HttpExchange exchange, int status, Response response) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        drain(exchange.getRequestBody());
+        // Length 0 makes the response chunked
+        exchange.sendResponseHeaders(status, 0);
+        try (OutputSink out = OutputSink.buffered(exchange.getResponseBody(), StandardCharsets.UTF_8,
+                RESPONSE_BUFFER_SIZE)) {
+            response.accept(out);
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        send(exchange, status, out -> {
+            out.append("{\"error\":");
+            appendString(message, out);
+            out.append('}');
+        });
+    }
+
+    /**
+     * Reads the rest of the request, so the connection can be kept alive.
+     */
+    private static void drain(InputStream body) throws IOException {
+        byte[] buffer = new byte[1024];
+        while (body.read(buffer) >= 0) {
+            // skip
+        }
+    }
+
+    private static Map<String, String> parameters(String rawQuery) {
+        Map<String, String> parameters = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return parameters;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int separator = pair.indexOf('=');
+            String name = separator < 0 ? pair : pair.substring(0, separator);
+            String value = separator < 0 ? "" : pair.substring(separator + 1);
+            parameters.put(decode(name), decode(value));
+        }
+        return parameters;
+    }
+
+    private static String decode(String text) {
+        try {
+            return URLDecoder.decode(text, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String parameter(Map<String, String> parameters, String name) {
+        String value = parameters.get(name);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("Missing parameter: " + name);
+        }
+        return value;
+    }
+
+    /**
+     * @return the actor with the last name and the first name, the first name is empty or missing for the actors
+     *         that are known by one name
+     */
+    private static Actor actorParameter(Map<String, String> parameters) {
+        return new Actor(parameters.getOrDefault("firstName", ""), parameter(parameters, "lastName"));
+    }
+
+    private static int intParameter(Map<String, String> parameters, String name, int defaultValue) {
+        return parameters.containsKey(name) ? intParameter(parameters, name) : defaultValue;
+    }
+
+    private static int limitParameter(Map<String, String> parameters) {
+        int limit = intParameter(parameters, "limit", DEFAULT_LIMIT);
+        if (limit < 0) {
+            throw new IllegalArgumentException("The limit cannot be negative: " + limit);
+        }
+        return limit;
+    }
+
+    private static int intParameter(Map<String, String> parameters, String name) {
+        String value = parameter(parameters, name);
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("The parameter " + name + " is not a number: " + value);
+        }
+    }
+
+    private static void appendMovies(List<Movie> movies, OutputSink out) {
+        out.append('[');
+        for (int i = 0; i < movies.size(); i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            appendMovie(movies.get(i), out);
+        }
+        out.append(']');
+    }
+
+    private static void appendMovie(Movie movie, OutputSink out) {
+        out.append("{\"title\":");
+        appendString(movie.getTitle(), out);
+        out.append(",\"year\":").append(movie.getYear()).append(",\"duration\":").append(movie.getDuration())
+                .append(",\"actors\":[");
+        List<Actor> actors = movie.getActors();
+        for (int i = 0; i < actors.size(); i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            out.append("{\"firstName\":");
+            appendString(actors.get(i).getFirstName(), out);
+            out.append(",\"lastName\":");
+            appendString(actors.get(i).getLastName(), out);
+            out.append('}');
+        }
+        out.append("]}");
+    }
+
+    private static void appendString(String text, OutputSink out) {
+        if (text == null) {
+            out.append("null");
+            return;
+        }
+        out.append('"');
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\' || c < 0x20) {
+                out.append(text, start, i);
+                if (c == '"' || c == '\\') {
+                    out.append('\\').append(c);
+                } else {
+                    out.append("\\u00").append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 0xF, 16));
+                }
+                start = i + 1;
+            }
+        }
+        out.append(text, start, text.length()).append('"');
+    }
+
+    private static ThreadFactory threadFactory() {
+        AtomicInteger count = new AtomicInteger();
+        return task -> {
+            Thread thread = new Thread(task, "movies-server-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,206 @@
+package com.sap.java8_hol.movies;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Stores names as UTF-8 bytes one after another in a single growing byte array. A name is referred to by an int
+ * handle, and a {@link String} is created only when the name is read.
+ * <p>
+ * {@link #intern(String)} stores every distinct name once, so two interned names are equal exactly when their handles
+ * are. The hash of every name is kept and is the same as the hash of the equal String, so objects that hash their
+ * names give the same hash whether the names are in an arena or not.
+ * <p>
+ * Adding names takes a lock, reading them does not: a handle can be read from any thread that got it after it was
+ * added.
+ */
+public class NameArena {
+
+    /**
+     * The arrays of the arena. A new storage is published whenever one of them grows, so a reader always sees arrays
+     * that hold all the names added before.
+     */
+    private static class Storage {
+        final byte[] bytes;
+        // The name with handle i is between offsets[i] and offsets[i + 1]
+        final int[] offsets;
+        final int[] hashes;
+
+        Storage(byte[] bytes, int[] offsets, int[] hashes) {
+            this.bytes = bytes;
+            this.offsets = offsets;
+            this.hashes = hashes;
+        }
+    }
+
+    private static final int MAX_BYTES = Integer.MAX_VALUE - 8;
+
+    private volatile Storage storage = new Storage(new byte[64 * 1024], new int[1025], new int[1024]);
+    private int count;
+
+    // Open addressing table of the interned names, handle + 1 or 0 for an empty slot
+    private int[] table = new int[2048];
+    private int interned;
+
+    /**
+     * @return the handle of the name, the name is stored if it is not in the arena yet
+     */
+    public synchronized int intern(String name) {
+        int hash = name.hashCode();
+        int mask = table.length - 1;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            int handle = table[slot] - 1;
+            if (handle < 0) {
+                handle = add(name);
+                table[slot] = handle + 1;
+                if (++interned * 2 > table.length) {
+                    rehash();
+                }
+                return handle;
+            }
+            if (equals(handle, name)) {
+                return handle;
+            }
+        }
+    }
+
+    /**
+     * Stores the name without looking for an equal name, for names that rarely repeat.
+     * @return the handle of the name
+     */
+    public synchronized int add(String name) {
+        byte[] utf8 = name.getBytes(StandardCharsets.UTF_8);
+        Storage current = storage;
+        int start = current.offsets[count];
+        if (start + utf8.length > current.bytes.length) {
+            long bytesNeeded = (long) start + utf8.length;
+            if (bytesNeeded > MAX_BYTES) {
+                throw new IllegalStateException("The arena is full");
+            }
+            int capacity = (int) Math.min(MAX_BYTES, Math.max(bytesNeeded, current.bytes.length * 2L));
+            current = new Storage(Arrays.copyOf(current.bytes, capacity), current.offsets, current.hashes);
+        }
+        if (count + 1 == current.hashes.length) {
+            int capacity = current.hashes.length * 2;
+            current = new Storage(current.bytes, Arrays.copyOf(current.offsets, capacity + 1),
+                    Arrays.copyOf(current.hashes, capacity));
+        }
+        System.arraycopy(utf8, 0, current.bytes, start, utf8.length);
+        current.offsets[count + 1] = start + utf8.length;
+        current.hashes[count] = name.hashCode();
+        // Publishes the name, also when the arrays did not grow
+        storage = current;
+        return count++;
+    }
+
+    public String getString(int handle) {
+        Storage current = storage;
+        int start = current.offsets[handle];
+        return new String(current.bytes, start, current.offsets[handle + 1] - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the same hash as {@link String#hashCode()} of the name
+     */
+    public int hash(int handle) {
+        return storage.hashes[handle];
+    }
+
+    /**
+     * @return the number of bytes of the name in UTF-8
+     */
+    public int length(int handle) {
+        Storage current = storage;
+        return current.offsets[handle + 1] - current.offsets[handle];
+    }
+
+    /**
+     * Compares the name with a string without creating a string for the name, unless the name is not ASCII.
+     */
+    public boolean equals(int handle, String name) {
+        Storage current = storage;
+        if (current.hashes[handle] != name.hashCode()) {
+            return false;
+        }
+        int start = current.offsets[handle];
+        int length = current.offsets[handle + 1] - start;
+        if (length != name.length()) {
+            // Equal strings of other than ASCII chars have more bytes than chars
+            return length > name.length() && getString(handle).equals(name);
+        }
+        for (int i = 0; i < length; i++) {
+            byte value = current.bytes[start + i];
+            if (value < 0) {
+                return getString(handle).equals(name);
+            }
+            if (value != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compares the bytes of a name of this arena with a name of another arena.
+     */
+    public boolean equals(int handle, NameArena other, int otherHandle) {
+        if (other == this && otherHandle == handle) {
+            return true;
+        }
+        Storage current = storage;
+        Storage otherStorage = other.storage;
+        if (current.hashes[handle] != otherStorage.hashes[otherHandle]) {
+            return false;
+        }
+        int start = current.offsets[handle];
+        int length = current.offsets[handle + 1] - start;
+        int otherStart = otherStorage.offsets[otherHandle];
+        if (otherStorage.offsets[otherHandle + 1] - otherStart != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (current.bytes[start + i] != otherStorage.bytes[otherStart + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of names in the arena
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * @return the number of bytes used by the names
+     */
+    public synchronized long getByteSize() {
+        return storage.offsets[count];
+    }
+
+    private void rehash() {
+        int[] old = table;
+        table = new int[old.length * 2];
+        int mask = table.length - 1;
+        Storage current = storage;
+        for (int entry : old) {
+            if (entry != 0) {
+                int slot = mix(current.hashes[entry - 1]) & mask;
+                while (table[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = entry;
+            }
+        }
+    }
+
+    /**
+     * Spreads the bits of String.hashCode, whose low bits are poor for short names.
+     */
+    private static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,40 @@
+package com.sap.java8_hol.movies;
+
+/**
+ * Sink that drops everything.
+ */
+class NullSink implements OutputSink {
+
+    static final NullSink INSTANCE = new NullSink();
+
+    private NullSink() {
+    }
+
+    @Override
+    public OutputSink append(CharSequence text) {
+        return this;
+    }
+
+    @Override
+    public OutputSink append(char[] chars, int offset, int length) {
+        return this;
+    }
+
+    @Override
+    public OutputSink append(char c) {
+        return this;
+    }
+
+    @Override
+    public OutputSink append(int value) {
+        return this;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,84 @@
+package com.sap.java8_hol.movies;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Destination of the printed reports. The sinks buffer the text and write it in big blocks, so printing a line does
+ * not lock and flush the console every time. Errors are reported as {@link java.io.UncheckedIOException}.
+ * <p>
+ * A sink is an {@link Appendable}, so formatters such as {@link java.time.format.DateTimeFormatter#formatTo} can
+ * write into it directly. A sink is not thread safe. Nothing is guaranteed to be written before {@link #flush()} or
+ * {@link #close()}.
+ */
+public interface OutputSink extends Appendable, AutoCloseable {
+
+    int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+    @Override
+    OutputSink append(CharSequence text);
+
+    @Override
+    default OutputSink append(CharSequence text, int start, int end) {
+        return append(text.subSequence(start, end));
+    }
+
+    @Override
+    OutputSink append(char c);
+
+    default OutputSink append(char[] chars, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            append(chars[i]);
+        }
+        return this;
+    }
+
+    /**
+     * Appends the decimal value without creating a string for it.
+     */
+    OutputSink append(int value);
+
+    default OutputSink newLine() {
+        return append('\n');
+    }
+
+    void flush();
+
+    /**
+     * Flushes the sink and releases its destination.
+     */
+    @Override
+    void close();
+
+    /**
+     * @return a sink that writes to {@code System.out} through a big buffer; closing it only flushes it
+     */
+    static OutputSink standardOutput() {
+        return new WriterSink(new OutputStreamWriter(System.out, Charset.defaultCharset()), DEFAULT_BUFFER_SIZE,
+                false);
+    }
+
+    static OutputSink buffered(OutputStream out, Charset charset, int bufferSize) {
+        return new WriterSink(new OutputStreamWriter(out, charset), bufferSize, true);
+    }
+
+    /**
+     * @return a sink that encodes the text as UTF-8 into a direct buffer and writes it straight to the file
+     */
+    static OutputSink channel(Path file) throws IOException {
+        return new ChannelSink(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING), DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @return a sink that drops everything, for measuring the reports without the output
+     */
+    static OutputSink nullSink() {
+        return NullSink.INSTANCE;
+    }
+}
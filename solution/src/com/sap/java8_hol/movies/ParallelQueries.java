@@ -0,0 +1,210 @@
+package com.sap.java8_hol.movies;
+
+import java.util.HashSet;
+import java.util.IntSummaryStatistics;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Answers the queries of the explorer with parallel streams over a {@link CatalogSpliterator}, on a pool of its own
+ * instead of the common pool: a parallel stream that is started by a task of a pool runs on that pool, so slow
+ * queries do not take the threads of the other users of the common pool, and the parallelism can be chosen per
+ * catalog. The default parallelism is the number of processors and can be set with
+ * {@code -Dmovies.parallelism}.
+ * <p>
+ * The results are collected without merging partial results where the order does not matter: the movies are grouped
+ * by year into a concurrent map and the actors are marked in a shared bit set of actor ids.
+ */
+public class ParallelQueries implements AutoCloseable {
+
+    public static final int DEFAULT_PARALLELISM = Integer.getInteger("movies.parallelism",
+            Runtime.getRuntime().availableProcessors());
+
+    private final Movie[] movies;
+    private final long[] work;
+    private final ForkJoinPool pool;
+    private final boolean ownsPool;
+    // The registry of the actors of all the movies, null if they are in different registries
+    private final ActorRegistry actorRegistry;
+
+    public ParallelQueries(List<Movie> movies) {
+        this(movies, DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * Creates a pool with the given parallelism, which is shut down by {@link #close()}.
+     */
+    public ParallelQueries(List<Movie> movies, int parallelism) {
+        this(movies, newPool(parallelism), true);
+    }
+
+    /**
+     * Runs the queries on a pool that is shared with other users and is not shut down by {@link #close()}.
+     */
+    public ParallelQueries(List<Movie> movies, ForkJoinPool pool) {
+        this(movies, pool, false);
+    }
+
+    private ParallelQueries(List<Movie> movies, ForkJoinPool pool, boolean ownsPool) {
+        this.movies = movies.toArray(new Movie[movies.size()]);
+        this.work = CatalogSpliterator.cumulativeWork(this.movies);
+        this.pool = pool;
+        this.ownsPool = ownsPool;
+        this.actorRegistry = commonRegistry(this.movies);
+    }
+
+    private static ForkJoinPool newPool(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("The parallelism must be positive: " + parallelism);
+        }
+        return new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("movies-query-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+    }
+
+    private static ActorRegistry commonRegistry(Movie[] movies) {
+        ActorRegistry registry = movies.length > 0 ? movies[0].getActorRegistry() : null;
+        for (Movie movie : movies) {
+            if (movie.getActorRegistry() != registry) {
+                return null;
+            }
+        }
+        return registry;
+    }
+
+    /**
+     * @return a parallel stream of the movies, it runs on the pool of the queries only inside {@link #run}
+     */
+    public Stream<Movie> stream() {
+        return StreamSupport.stream(new CatalogSpliterator(movies, work, 0, movies.length), true);
+    }
+
+    /**
+     * Runs a query over the parallel stream of the movies on the pool of the queries.
+     */
+    public <T> T run(Function<Stream<Movie>, T> query) {
+        return pool.submit(() -> query.apply(stream())).join();
+    }
+
+    public long countMovies(int year) {
+        return run(stream -> stream
+                .filter(movie -> movie.getYear() == year)
+                .count());
+    }
+
+    public Optional<Movie> findFirstMovieWithTitle(String title) {
+        return run(stream -> stream
+                .filter(movie -> movie.getTitle().contains(title))
+                .findFirst());
+    }
+
+    /**
+     * @return the statistics of the release years, for the first and the last year in one pass
+     */
+    public IntSummaryStatistics getYearStatistics() {
+        return run(stream -> stream
+                .mapToInt(Movie::getYear)
+                .summaryStatistics());
+    }
+
+    /**
+     * @return the movies grouped by year, the movies of a year are not in their original order
+     */
+    public Map<Integer, List<Movie>> getMoviesByYear() {
+        return run(stream -> stream
+                .collect(Collectors.groupingByConcurrent(Movie::getYear)));
+    }
+
+    public Set<Actor> getAllActors() {
+        if (actorRegistry == null) {
+            Set<Actor> actors = ConcurrentHashMap.newKeySet();
+            run(stream -> {
+                stream.forEach(movie -> actors.addAll(movie.getActors()));
+                return null;
+            });
+            return actors;
+        }
+
+        // The threads set the bits of the actor ids in one array, a word is written only the first time that one of
+        // its bits is set
+        AtomicLongArray seen = new AtomicLongArray((actorRegistry.size() + 63) >>> 6);
+        run(stream -> {
+            stream.forEach(movie -> {
+                for (int i = 0; i < movie.getActorCount(); i++) {
+                    mark(seen, movie.getActorId(i));
+                }
+            });
+            return null;
+        });
+        Set<Actor> actors = new HashSet<>();
+        for (int word = 0; word < seen.length(); word++) {
+            for (long bits = seen.get(word); bits != 0; bits &= bits - 1) {
+                actors.add(actorRegistry.get((word << 6) + Long.numberOfTrailingZeros(bits)));
+            }
+        }
+        return actors;
+    }
+
+    private static void mark(AtomicLongArray words, int id) {
+        int word = id >>> 6;
+        long bit = 1L << id;
+        long bits = words.get(word);
+        while ((bits & bit) == 0 && !words.compareAndSet(word, bits, bits | bit)) {
+            bits = words.get(word);
+        }
+    }
+
+    /**
+     * @return the movies in which the actor plays, in their original order
+     */
+    public List<Movie> getMoviesWithActor(Actor actor) {
+        if (actorRegistry == null) {
+            return run(stream -> stream
+                    .filter(movie -> movie.getActors().contains(actor))
+                    .collect(Collectors.toList()));
+        }
+        int actorId = actorRegistry.find(actor);
+        return run(stream -> stream
+                .filter(movie -> playsIn(movie, actorId))
+                .collect(Collectors.toList()));
+    }
+
+    private static boolean playsIn(Movie movie, int actorId) {
+        for (int i = 0; i < movie.getActorCount(); i++) {
+            if (movie.getActorId(i) == actorId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    public int getMovieCount() {
+        return movies.length;
+    }
+
+    /**
+     * Shuts down the pool if it was created by the queries.
+     */
+    @Override
+    public void close() {
+        if (ownsPool) {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package com.sap.java8_hol.movies;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Generates the projection schedule of the movies: one movie a day at the same local time, starting with the first
+ * start. Every movie is printed with its local start and end, followed by the start and the end as instants for every
+ * target zone, taking the local time as a time in that zone. With the single zone Europe/Berlin the output is the same
+ * as the one of {@link MoviesExplorer#printMovieProjectionData(List)}.
+ * <p>
+ * The times are kept as seconds since the epoch, the offsets of a zone are looked up in a table of its transitions
+ * during the schedule, and the lines are formatted by hand into a reusable char buffer. The tables are cached, so a
+ * generator is meant to be reused; it is safe to use from many threads.
+ */
+public class ProjectionScheduleGenerator {
+
+    private static final int SECONDS_PER_DAY = 24 * 60 * 60;
+    private static final int CHUNK_SIZE = 1024;
+
+    private final String localLabel;
+    private final long firstStart;
+    private final List<ZoneId> zones;
+    private final String[] zoneLabels;
+    private final String am;
+    private final String pm;
+    // Used for the years before year 1, whose format is not done by hand
+    private final DateTimeFormatter localFormatter;
+
+    private final ConcurrentMap<ZoneId, ZoneTable> zoneTables = new ConcurrentHashMap<>();
+
+    /**
+     * @param localLabel the label of the local start and end, for example the city of the cinemas
+     * @param firstStart the local start of the first projection, a whole minute
+     * @param locale the locale of the AM/PM text of the local times
+     * @param zones the zones to print the instants of the projections for
+     */
+    public ProjectionScheduleGenerator(String localLabel, LocalDateTime firstStart, Locale locale, List<ZoneId> zones) {
+        if (firstStart.getSecond() != 0 || firstStart.getNano() != 0) {
+            throw new IllegalArgumentException("The first start has to be a whole minute: " + firstStart);
+        }
+        this.localLabel = localLabel;
+        this.firstStart = firstStart.toEpochSecond(ZoneOffset.UTC);
+        this.zones = Collections.unmodifiableList(new ArrayList<>(zones));
+        this.zoneLabels = new String[zones.size()];
+        for (int i = 0; i < zoneLabels.length; i++) {
+            zoneLabels[i] = label(zones.get(i));
+        }
+        DateTimeFormatter amPm = DateTimeFormatter.ofPattern("a", locale);
+        this.am = amPm.format(LocalTime.MIDNIGHT);
+        this.pm = amPm.format(LocalTime.NOON);
+        this.localFormatter = DateTimeFormatter.ofPattern("dd-M-yyyy hh:mm:ss a", locale);
+    }
+
+    /**
+     * @return the generator of the schedule printed by {@link MoviesExplorer#printMovieProjectionData(List)}
+     */
+    public static ProjectionScheduleGenerator berlin() {
+        return new ProjectionScheduleGenerator("Sofia", LocalDateTime.of(2017, 1, 1, 17, 0),
+                Locale.getDefault(Locale.Category.FORMAT), Collections.singletonList(ZoneId.of("Europe/Berlin")));
+    }
+
+    /**
+     * @return the label of the zone: the last part of its id, for example "New York" for America/New_York
+     */
+    public static String label(ZoneId zone) {
+        String id = zone.getId();
+        return id.substring(id.lastIndexOf('/') + 1).replace('_', ' ');
+    }
+
+    public List<ZoneId> getZones() {
+        return zones;
+    }
+
+    @SuppressWarnings("try")
+    public void write(List<Movie> movies, OutputSink out) {
+        try (Instrumentation.Span span = Instrumentation.PRINT_PROJECTIONS.start()) {
+            ZoneTable[] tables = tables(movies);
+            CharArraySink buffer = new CharArraySink(CHUNK_SIZE * 256);
+            for (int from = 0; from < movies.size(); from += CHUNK_SIZE) {
+                buffer.clear();
+                format(movies, from, Math.min(movies.size(), from + CHUNK_SIZE), tables, buffer);
+                buffer.writeTo(out);
+            }
+        }
+    }
+
+    /**
+     * Formats ranges of the movies in parallel and writes them in order, so the output is the same as the one of
+     * {@link #write(List, OutputSink)}. Only a few ranges per thread are kept in memory at a time.
+     */
+    @SuppressWarnings("try")
+    public void writeParallel(List<Movie> movies, OutputSink out) {
+        try (Instrumentation.Span span = Instrumentation.PRINT_PROJECTIONS.start()) {
+            writeParallel(movies, tables(movies), out);
+        }
+    }
+
+    private void writeParallel(List<Movie> movies, ZoneTable[] tables, OutputSink out) {
+        int chunks = (movies.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        int batch = Math.min(chunks, ForkJoinPool.getCommonPoolParallelism() * 4);
+        CharArraySink[] buffers = new CharArraySink[batch];
+        for (int i = 0; i < batch; i++) {
+            buffers[i] = new CharArraySink(CHUNK_SIZE * 256);
+        }
+        for (int firstChunk = 0; firstChunk < chunks; firstChunk += batch) {
+            int first = firstChunk;
+            int count = Math.min(batch, chunks - firstChunk);
+            IntStream.range(0, count).parallel().forEach(i -> {
+                int from = (first + i) * CHUNK_SIZE;
+                buffers[i].clear();
+                format(movies, from, Math.min(movies.size(), from + CHUNK_SIZE), tables, buffers[i]);
+            });
+            for (int i = 0; i < count; i++) {
+                buffers[i].writeTo(out);
+            }
+        }
+    }
+
+    private void format(List<Movie> movies, int from, int to, ZoneTable[] tables, CharArraySink out) {
+        for (int i = from; i < to; i++) {
+            Movie movie = movies.get(i);
+            long start = firstStart + (long) i * SECONDS_PER_DAY;
+            long end = start + movie.getDuration() * 60L;
+
+            movie.appendTo(out).newLine();
+            out.append(localLabel).append(" Start Date and Time :");
+            appendLocal(start, out);
+            out.append(" End Date and Time : ");
+            appendLocal(end, out);
+            out.newLine();
+            for (int zone = 0; zone < tables.length; zone++) {
+                out.append(zoneLabels[zone]).append(" Start Date and Time :");
+                appendInstant(start - tables[zone].offsetSeconds(start), out);
+                out.append(" Date and End Time : ");
+                appendInstant(end - tables[zone].offsetSeconds(end), out);
+                out.newLine();
+            }
+            out.newLine();
+        }
+    }
+
+    /**
+     * Appends the local time in the format dd-M-yyyy hh:mm:ss a.
+     */
+    private void appendLocal(long localSecond, CharArraySink out) {
+        long days = Math.floorDiv(localSecond, SECONDS_PER_DAY);
+        int secondOfDay = (int) (localSecond - days * SECONDS_PER_DAY);
+        long date = civilDate(days);
+        int year = (int) (date >> 9);
+        if (year < 1) {
+            localFormatter.formatTo(LocalDateTime.ofEpochSecond(localSecond, 0, ZoneOffset.UTC), out);
+            return;
+        }
+        int hour = secondOfDay / 3600;
+        int clockHour = hour % 12 == 0 ? 12 : hour % 12;
+        out.appendPadded((int) (date & 0x1F), 2).append('-')
+                .append((int) (date >> 5 & 0xF)).append('-');
+        appendYear(year, out);
+        out.append(' ').appendPadded(clockHour, 2)
+                .append(':').appendPadded(secondOfDay / 60 % 60, 2)
+                .append(':').appendPadded(secondOfDay % 60, 2)
+                .append(' ').append(hour < 12 ? am : pm);
+    }
+
+    /**
+     * Appends the instant in the format of {@link DateTimeFormatter#ISO_INSTANT}.
+     */
+    private static void appendInstant(long epochSecond, CharArraySink out) {
+        long days = Math.floorDiv(epochSecond, SECONDS_PER_DAY);
+        int secondOfDay = (int) (epochSecond - days * SECONDS_PER_DAY);
+        long date = civilDate(days);
+        int year = (int) (date >> 9);
+        if (year < 1) {
+            DateTimeFormatter.ISO_INSTANT.formatTo(Instant.ofEpochSecond(epochSecond), out);
+            return;
+        }
+        appendYear(year, out);
+        out.append('-').appendPadded((int) (date >> 5 & 0xF), 2)
+                .append('-').appendPadded((int) (date & 0x1F), 2)
+                .append('T').appendPadded(secondOfDay / 3600, 2)
+                .append(':').appendPadded(secondOfDay / 60 % 60, 2)
+                .append(':').appendPadded(secondOfDay % 60, 2)
+                .append('Z');
+    }
+
+    private static void appendYear(int year, CharArraySink out) {
+        if (year > 9999) {
+            out.append('+').append(year);
+        } else {
+            out.appendPadded(year, 4);
+        }
+    }
+
+    /**
+     * Converts days since the epoch to the proleptic Gregorian date, packed as
+     * year &lt;&lt; 9 | month &lt;&lt; 5 | day. The algorithm counts in eras of 400 years, starting from March 1st so
+     * that the leap day is the last day of a year.
+     */
+    private static long civilDate(long epochDay) {
+        long shifted = epochDay + 719468; // days from 0000-03-01
+        long era = Math.floorDiv(shifted, 146097);
+        long dayOfEra = shifted - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shiftedMonth = (5 * dayOfYear + 2) / 153;
+        long day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+        long month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        return year << 9 | month << 5 | day;
+    }
+
+    /**
+     * @return the offset tables of the zones, covering all the local times of the schedule of the movies
+     */
+    private ZoneTable[] tables(List<Movie> movies) {
+        int minDuration = 0;
+        int maxDuration = 0;
+        for (Movie movie : movies) {
+            minDuration = Math.min(minDuration, movie.getDuration());
+            maxDuration = Math.max(maxDuration, movie.getDuration());
+        }
+        long from = firstStart + minDuration * 60L;
+        long to = firstStart + (long) Math.max(0, movies.size() - 1) * SECONDS_PER_DAY + maxDuration * 60L;
+
+        ZoneTable[] tables = new ZoneTable[zones.size()];
+        for (int i = 0; i < tables.length; i++) {
+            tables[i] = zoneTables.compute(zones.get(i), (zone, table) -> table != null && table.covers(from, to)
+                    ? table : ZoneTable.build(zone.getRules(), from, to));
+        }
+        return tables;
+    }
+
+    /**
+     * The offsets of a zone for a range of local times. Around every transition there is a window of local times that
+     * are in a gap or in an overlap; like {@link java.time.ZonedDateTime#of}, they use the offset before the
+     * transition, so a time in a gap is moved later by the length of the gap and a time in an overlap takes the earlier
+     * of its two instants.
+     */
+    private static class ZoneTable {
+        private final long from;
+        private final long to;
+        private final int initialOffset;
+        // Local seconds of the windows of the transitions, in increasing order
+        private final long[] windowStarts;
+        private final long[] windowEnds;
+        private final int[] offsetsBefore;
+        private final int[] offsetsAfter;
+
+        private ZoneTable(long from, long to, int initialOffset, List<ZoneOffsetTransition> transitions) {
+            this.from = from;
+            this.to = to;
+            this.initialOffset = initialOffset;
+            int size = transitions.size();
+            windowStarts = new long[size];
+            windowEnds = new long[size];
+            offsetsBefore = new int[size];
+            offsetsAfter = new int[size];
+            for (int i = 0; i < size; i++) {
+                ZoneOffsetTransition transition = transitions.get(i);
+                offsetsBefore[i] = transition.getOffsetBefore().getTotalSeconds();
+                offsetsAfter[i] = transition.getOffsetAfter().getTotalSeconds();
+                long localBefore = transition.toEpochSecond() + offsetsBefore[i];
+                long localAfter = transition.toEpochSecond() + offsetsAfter[i];
+                windowStarts[i] = Math.min(localBefore, localAfter);
+                windowEnds[i] = Math.max(localBefore, localAfter);
+            }
+        }
+
+        static ZoneTable build(ZoneRules rules, long from, long to) {
+            // The offsets are less than a day, so a day around the range covers all its local times
+            Instant first = Instant.ofEpochSecond(from - SECONDS_PER_DAY);
+            long last = to + SECONDS_PER_DAY;
+            List<ZoneOffsetTransition> transitions = new ArrayList<>();
+            ZoneOffsetTransition transition = rules.nextTransition(first);
+            while (transition != null && transition.toEpochSecond() <= last) {
+                transitions.add(transition);
+                transition = rules.nextTransition(transition.getInstant());
+            }
+            return new ZoneTable(from, to, rules.getOffset(first).getTotalSeconds(), transitions);
+        }
+
+        boolean covers(long from, long to) {
+            return this.from <= from && to <= this.to;
+        }
+
+        int offsetSeconds(long localSecond) {
+            int index = Arrays.binarySearch(windowStarts, localSecond);
+            if (index < 0) {
+                index = -index - 2; // the last window that starts before the time
+            }
+            if (index < 0) {
+                return initialOffset;
+            }
+            return localSecond < windowEnds[index] ? offsetsBefore[index] : offsetsAfter[index];
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package com.sap.java8_hol.movies;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Caches the results of queries over a {@link MovieCatalog}. A result is cached under the name of the query and its
+ * parameters and belongs to the catalog version it was computed from: when the catalog changes, the whole cache is
+ * dropped on the next access.
+ * <p>
+ * The queries are computed from the {@link CatalogIndexes} of the version, which the cache builds once per version,
+ * when the first query of the version misses. Only the indexes of the newest version are kept.
+ * <p>
+ * The cache holds at most {@code maxEntries} results and evicts the least recently used one; a result also expires
+ * {@code timeToLive} after it was computed. Queries are computed outside of the lock of the cache, so two threads
+ * that miss the same query at the same time both compute it.
+ * <p>
+ * Cached results are shared by all the callers and must not be changed; the queries of this class return read-only
+ * results.
+ */
+public class QueryCache {
+
+    private final MovieCatalog catalog;
+    private final ActorRegistry actorRegistry;
+    private final long timeToLiveNanos;
+    private final LongSupplier nanoTime;
+
+    private final LinkedHashMap<List<Object>, CachedResult> entries;
+    private long version = -1;
+    private CatalogIndexes indexes;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long expirations;
+    private long invalidations;
+
+    /**
+     * @param actorRegistry the registry that the actors of all the movies of the catalog are interned in
+     */
+    public QueryCache(MovieCatalog catalog, ActorRegistry actorRegistry, int maxEntries, Duration timeToLive) {
+        this(catalog, actorRegistry, maxEntries, timeToLive, System::nanoTime);
+    }
+
+    QueryCache(MovieCatalog catalog, ActorRegistry actorRegistry, int maxEntries, Duration timeToLive,
+            LongSupplier nanoTime) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("The cache must hold at least one entry: " + maxEntries);
+        }
+        this.catalog = catalog;
+        this.actorRegistry = actorRegistry;
+        this.timeToLiveNanos = timeToLive.toNanos();
+        this.nanoTime = nanoTime;
+        // Access order makes the eldest entry the least recently used one
+        this.entries = new LinkedHashMap<List<Object>, CachedResult>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<Object>, CachedResult> eldest) {
+                if (size() > maxEntries) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return the cached result of the query with the parameters, computed from the current version of the catalog
+     *         if it is not cached
+     */
+    @SuppressWarnings("unchecked")
+    public <R> R get(Function<CatalogIndexes, R> query, String name, Object... parameters) {
+        CatalogVersion current = catalog.current();
+        List<Object> key = key(name, parameters);
+        synchronized (this) {
+            // A thread that read an older version than the cached one computes its result without the cache
+            if (current.getVersion() >= version) {
+                checkVersion(current);
+                CachedResult entry = entries.get(key);
+                if (entry != null) {
+                    if (nanoTime.getAsLong() - entry.created < timeToLiveNanos) {
+                        hits++;
+                        return (R) entry.result;
+                    }
+                    entries.remove(key);
+                    expirations++;
+                }
+                misses++;
+            }
+        }
+
+        R result = Objects.requireNonNull(query.apply(indexes(current)), "The result of a query cannot be null");
+        synchronized (this) {
+            // Not cached if the catalog changed meanwhile, or if the result is from an older version
+            if (version == current.getVersion()) {
+                entries.put(key, new CachedResult(result, nanoTime.getAsLong()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the indexes of the current version of the catalog, for the queries that are not worth caching
+     */
+    public CatalogIndexes getIndexes() {
+        return indexes(catalog.current());
+    }
+
+    public List<Movie> getMoviesWithActor(Actor actor) {
+        return get(indexes -> indexes.getActorIndex().findMoviesWithActor(actor), "moviesWithActor", actor);
+    }
+
+    public Optional<Movie> findFirstMovieWithTitle(String text) {
+        return get(indexes -> indexes.getTitleIndex().findFirst(text, false), "firstMovieWithTitle", text);
+    }
+
+    /**
+     * @return the first movies, at most {@code limit} of them, whose title contains the text, ignoring the case
+     */
+    public List<Movie> findMoviesWithTitle(String text, int limit) {
+        return get(indexes -> Collections.unmodifiableList(indexes.getTitleIndex().findAll(text, true, limit)),
+                "moviesWithTitle", text, limit);
+    }
+
+    public Map<Integer, List<Movie>> getMoviesByYear() {
+        return get(indexes -> indexes.getYearIndex().getMoviesByYear(), "moviesByYear");
+    }
+
+    /**
+     * @return the movies released between the two years that last between the two durations, all inclusive, and in
+     *         which the actor plays, if it is not null
+     */
+    public List<Movie> filter(int fromYear, int toYear, int minDuration, int maxDuration, Actor actor) {
+        return get(indexes -> {
+            BitmapIndex bitmapIndex = indexes.getBitmapIndex();
+            CompressedBitmap found = bitmapIndex.all();
+            if (fromYear != Integer.MIN_VALUE || toYear != Integer.MAX_VALUE) {
+                found = found.and(bitmapIndex.years(fromYear, toYear));
+            }
+            if (minDuration != Integer.MIN_VALUE || maxDuration != Integer.MAX_VALUE) {
+                found = found.and(bitmapIndex.durations(minDuration, maxDuration));
+            }
+            if (actor != null) {
+                found = found.and(bitmapIndex.actor(actor));
+            }
+            return bitmapIndex.movies(found);
+        }, "filter", fromYear, toYear, minDuration, maxDuration, actor);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized Statistics getStatistics() {
+        return new Statistics(hits, misses, evictions, expirations, invalidations);
+    }
+
+    /**
+     * Drops the cached results if the catalog moved to a newer version; the version of the cache never goes back.
+     */
+    private void checkVersion(CatalogVersion current) {
+        if (current.getVersion() > version) {
+            if (!entries.isEmpty()) {
+                entries.clear();
+                invalidations++;
+            }
+            version = current.getVersion();
+        }
+    }
+
+    /**
+     * @return the indexes of the version, built outside of the lock if the cache has no indexes of it yet
+     */
+    private CatalogIndexes indexes(CatalogVersion current) {
+        synchronized (this) {
+            if (indexes != null && indexes.getVersion() == current) {
+                return indexes;
+            }
+        }
+        CatalogIndexes built = CatalogIndexes.build(current, actorRegistry);
+        synchronized (this) {
+            if (indexes == null || indexes.getVersion().getVersion() < current.getVersion()) {
+                indexes = built;
+            }
+        }
+        return built;
+    }
+
+    private static List<Object> key(String name, Object... parameters) {
+        Object[] key = Arrays.copyOf(parameters, parameters.length + 1);
+        System.arraycopy(key, 0, key, 1, parameters.length);
+        key[0] = name;
+        return Arrays.asList(key);
+    }
+
+    private static class CachedResult {
+        final Object result;
+        final long created;
+
+        CachedResult(Object result, long created) {
+            this.result = result;
+            this.created = created;
+        }
+    }
+
+    /**
+     * Counters of the cache since it was created.
+     */
+    public static class Statistics {
+
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long expirations;
+        private final long invalidations;
+
+        Statistics(long hits, long misses, long evictions, long expirations, long invalidations) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.expirations = expirations;
+            this.invalidations = invalidations;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        /**
+         * @return the number of results removed because the cache was full
+         */
+        public long getEvictions() {
+            return evictions;
+        }
+
+        /**
+         * @return the number of results removed because they were older than the time to live
+         */
+        public long getExpirations() {
+            return expirations;
+        }
+
+        /**
+         * @return the number of times the cache was dropped because the catalog changed
+         */
+        public long getInvalidations() {
+            return invalidations;
+        }
+
+        public double getHitRate() {
+            long requests = hits + misses;
+            return requests == 0 ? 0 : (double) hits / requests;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d hits, %d misses (%.1f%% hit rate), %d evictions, %d expirations, "
+                    + "%d invalidations", hits, misses, getHitRate() * 100, evictions, expirations, invalidations);
+        }
+    }
+}
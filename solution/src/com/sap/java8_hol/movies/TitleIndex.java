@@ -0,0 +1,253 @@
+package com.sap.java8_hol.movies;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Trigram index over the movie titles. Every title is split into overlapping three-character sequences (case folded)
+ * and each trigram keeps the sorted ordinals of the movies whose title contains it. A query intersects the posting
+ * lists of its own trigrams and only the remaining candidates are checked against the title.
+ * <p>
+ * The results keep the order in which the movies were added. Movies can be added at any time; the index can be
+ * queried concurrently with that.
+ */
+public class TitleIndex {
+
+    private static final int GRAM = 3;
+
+    private final List<Movie> movies = new ArrayList<>();
+    private final Map<Long, Postings> trigrams = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public TitleIndex() {
+    }
+
+    public TitleIndex(Collection<Movie> movies) {
+        addAll(movies);
+    }
+
+    public void add(Movie movie) {
+        lock.writeLock().lock();
+        try {
+            index(movie);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void addAll(Collection<Movie> newMovies) {
+        lock.writeLock().lock();
+        try {
+            newMovies.forEach(this::index);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return movies.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the first movie whose title contains the text, ignoring the case
+     */
+    public Optional<Movie> findFirst(String text) {
+        return findFirst(text, true);
+    }
+
+    public Optional<Movie> findFirst(String text, boolean ignoreCase) {
+        List<Movie> found = search(text, ignoreCase, false, 1);
+        return found.isEmpty() ? Optional.empty() : Optional.of(found.get(0));
+    }
+
+    /**
+     * @return all the movies whose title contains the text, ignoring the case
+     */
+    public List<Movie> findAll(String text) {
+        return findAll(text, true);
+    }
+
+    public List<Movie> findAll(String text, boolean ignoreCase) {
+        return search(text, ignoreCase, false, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return the first movies, at most {@code limit} of them, whose title contains the text
+     */
+    public List<Movie> findAll(String text, boolean ignoreCase, int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("The limit cannot be negative: " + limit);
+        }
+        return search(text, ignoreCase, false, limit);
+    }
+
+    /**
+     * @return all the movies whose title contains every word of the query as a whole word, ignoring the case
+     */
+    public List<Movie> findAllWithWords(String query) {
+        return search(query, true, true, Integer.MAX_VALUE);
+    }
+
+    private List<Movie> search(String query, boolean ignoreCase, boolean words, int limit) {
+        List<String> terms = words ? words(query) : Arrays.asList(query);
+        List<Movie> result = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            int[] candidates = candidates(terms);
+            int count = candidates == null ? movies.size() : candidates.length;
+            for (int i = 0; i < count && result.size() < limit; i++) {
+                Movie movie = movies.get(candidates == null ? i : candidates[i]);
+                if (matches(movie.getTitle(), terms, ignoreCase, words)) {
+                    result.add(movie);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    /**
+     * @return the sorted ordinals of the movies that contain all the trigrams of the terms or null if the terms are
+     * too short to use the index and all the movies have to be checked
+     */
+    private int[] candidates(List<String> terms) {
+        Set<Long> queryTrigrams = new LinkedHashSet<>();
+        for (String term : terms) {
+            for (int i = 0; i + GRAM <= term.length(); i++) {
+                queryTrigrams.add(trigram(term, i));
+            }
+        }
+        if (queryTrigrams.isEmpty()) {
+            return null;
+        }
+
+        List<Postings> lists = new ArrayList<>(queryTrigrams.size());
+        for (Long trigram : queryTrigrams) {
+            Postings postings = trigrams.get(trigram);
+            if (postings == null) {
+                return new int[0];
+            }
+            lists.add(postings);
+        }
+        lists.sort(Comparator.comparingInt(postings -> postings.size));
+
+        int[] result = Arrays.copyOf(lists.get(0).ordinals, lists.get(0).size);
+        int size = result.length;
+        for (int i = 1; i < lists.size() && size > 0; i++) {
+            size = lists.get(i).retainAll(result, size);
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    private static boolean matches(String title, List<String> terms, boolean ignoreCase, boolean words) {
+        for (String term : terms) {
+            if (!contains(title, term, ignoreCase, words)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean contains(String title, String term, boolean ignoreCase, boolean word) {
+        for (int i = 0; i + term.length() <= title.length(); i++) {
+            if (title.regionMatches(ignoreCase, i, term, 0, term.length())
+                    && (!word || isWordBoundary(title, i - 1) && isWordBoundary(title, i + term.length()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isWordBoundary(String title, int index) {
+        return index < 0 || index >= title.length() || !Character.isLetterOrDigit(title.charAt(index));
+    }
+
+    private static List<String> words(String query) {
+        List<String> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= query.length(); i++) {
+            boolean letter = i < query.length() && Character.isLetterOrDigit(query.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                words.add(query.substring(start, i));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    private void index(Movie movie) {
+        int ordinal = movies.size();
+        movies.add(movie);
+        String title = movie.getTitle();
+        for (int i = 0; i + GRAM <= title.length(); i++) {
+            trigrams.computeIfAbsent(trigram(title, i), key -> new Postings()).add(ordinal);
+        }
+    }
+
+    private static long trigram(String text, int index) {
+        return (long) fold(text.charAt(index)) << 32 | (long) fold(text.charAt(index + 1)) << 16
+                | fold(text.charAt(index + 2));
+    }
+
+    /**
+     * Folds the case the same way as String.regionMatches with ignoreCase does.
+     */
+    private static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    /**
+     * Growable, sorted list of movie ordinals.
+     */
+    private static class Postings {
+        private int[] ordinals = new int[4];
+        private int size;
+
+        void add(int ordinal) {
+            // Ordinals only grow, so a repeated trigram of the same title is always the last element
+            if (size > 0 && ordinals[size - 1] == ordinal) {
+                return;
+            }
+            if (size == ordinals.length) {
+                ordinals = Arrays.copyOf(ordinals, size * 2);
+            }
+            ordinals[size++] = ordinal;
+        }
+
+        /**
+         * Keeps only the first {@code count} elements of {@code sorted} which are also in these postings.
+         * @return the number of the retained elements
+         */
+        int retainAll(int[] sorted, int count) {
+            int result = 0;
+            int j = 0;
+            for (int i = 0; i < count && j < size; i++) {
+                while (j < size && ordinals[j] < sorted[i]) {
+                    j++;
+                }
+                if (j < size && ordinals[j] == sorted[i]) {
+                    sorted[result++] = sorted[i];
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.sap.java8_hol.movies;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * Sink over a writer with a big char buffer of its own.
+ */
+class WriterSink implements OutputSink {
+
+    private final Writer writer;
+    private final boolean closeWriter;
+    private final char[] buffer;
+    private int position;
+
+    WriterSink(Writer writer, int bufferSize, boolean closeWriter) {
+        this.writer = writer;
+        this.closeWriter = closeWriter;
+        this.buffer = new char[bufferSize];
+    }
+
+    @Override
+    public OutputSink append(CharSequence text) {
+        int length = text.length();
+        int from = 0;
+        while (from < length) {
+            if (position == buffer.length) {
+                writeBuffer();
+            }
+            int count = Math.min(length - from, buffer.length - position);
+            if (text instanceof String) {
+                ((String) text).getChars(from, from + count, buffer, position);
+            } else {
+                for (int i = 0; i < count; i++) {
+                    buffer[position + i] = text.charAt(from + i);
+                }
+            }
+            position += count;
+            from += count;
+        }
+        return this;
+    }
+
+    @Override
+    public OutputSink append(char[] chars, int offset, int length) {
+        int from = offset;
+        int end = offset + length;
+        while (from < end) {
+            if (position == buffer.length) {
+                writeBuffer();
+            }
+            int count = Math.min(end - from, buffer.length - position);
+            System.arraycopy(chars, from, buffer, position, count);
+            position += count;
+            from += count;
+        }
+        return this;
+    }
+
+    @Override
+    public OutputSink append(char c) {
+        if (position == buffer.length) {
+            writeBuffer();
+        }
+        buffer[position++] = c;
+        return this;
+    }
+
+    @Override
+    public OutputSink append(int value) {
+        if (buffer.length - position < 11) {
+            writeBuffer();
+        }
+        position = Digits.write(value, buffer, position);
+        return this;
+    }
+
+    @Override
+    public void flush() {
+        writeBuffer();
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+        if (closeWriter) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void writeBuffer() {
+        try {
+            writer.write(buffer, 0, position);
+            position = 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
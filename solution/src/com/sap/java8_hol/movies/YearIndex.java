@@ -0,0 +1,113 @@
+package com.sap.java8_hol.movies;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Groups the movies by their release year. The movies are bucket sorted into one array (keeping their original order
+ * inside every year) and the start of every year's bucket is kept in a dense array indexed by {@code year - minYear}.
+ * The starts are also the prefix sums of the per-year counts, so counting the movies of a year or of a range of years
+ * takes constant time.
+ * <p>
+ * The index is a snapshot of the movies at build time and should be rebuilt if the movies change.
+ */
+public class YearIndex {
+
+    private final int minYear;
+
+    // The movies of the year y are byYear[starts[y - minYear]] .. byYear[starts[y - minYear + 1] - 1]
+    private final int[] starts;
+    private final Movie[] byYear;
+
+    private final Map<Integer, List<Movie>> moviesByYear;
+
+    private YearIndex(int minYear, int[] starts, Movie[] byYear) {
+        this.minYear = minYear;
+        this.starts = starts;
+        this.byYear = byYear;
+
+        Map<Integer, List<Movie>> map = new HashMap<>();
+        for (int i = 0; i < starts.length - 1; i++) {
+            if (starts[i + 1] > starts[i]) {
+                map.put(minYear + i, moviesInYear(minYear + i));
+            }
+        }
+        moviesByYear = Collections.unmodifiableMap(map);
+    }
+
+    public static YearIndex build(List<Movie> movies) {
+        if (movies.isEmpty()) {
+            return new YearIndex(0, new int[1], new Movie[0]);
+        }
+        int minYear = Integer.MAX_VALUE;
+        int maxYear = Integer.MIN_VALUE;
+        for (Movie movie : movies) {
+            minYear = Math.min(minYear, movie.getYear());
+            maxYear = Math.max(maxYear, movie.getYear());
+        }
+
+        int[] starts = new int[maxYear - minYear + 2];
+        for (Movie movie : movies) {
+            starts[movie.getYear() - minYear + 1]++;
+        }
+        for (int i = 1; i < starts.length; i++) {
+            starts[i] += starts[i - 1];
+        }
+
+        Movie[] byYear = new Movie[movies.size()];
+        int[] next = Arrays.copyOf(starts, starts.length - 1);
+        for (Movie movie : movies) {
+            byYear[next[movie.getYear() - minYear]++] = movie;
+        }
+        return new YearIndex(minYear, starts, byYear);
+    }
+
+    public long countMovies(int year) {
+        return countMovies(year, year);
+    }
+
+    /**
+     * @return the number of the movies released between the two years, both inclusive
+     */
+    public long countMovies(int fromYear, int toYear) {
+        int from = bucket(fromYear);
+        int to = bucket((long) toYear + 1);
+        return to > from ? starts[to] - starts[from] : 0;
+    }
+
+    /**
+     * @return a read-only view of the movies released in the year, in their original order
+     */
+    public List<Movie> moviesInYear(int year) {
+        int bucket = bucket(year);
+        int from = starts[bucket];
+        int to = year < minYear || year > getMaxYear() ? from : starts[bucket + 1];
+        return Collections.unmodifiableList(Arrays.asList(byYear).subList(from, to));
+    }
+
+    /**
+     * @return a read-only map from every year that has movies to a view of its movies
+     */
+    public Map<Integer, List<Movie>> getMoviesByYear() {
+        return moviesByYear;
+    }
+
+    public int getMinYear() {
+        return minYear;
+    }
+
+    public int getMaxYear() {
+        return minYear + starts.length - 2;
+    }
+
+    /**
+     * @return the index of the year in the starts array, years outside of the indexed range are clamped to its ends
+     */
+    private int bucket(long year) {
+        long bucket = year - minYear;
+        return (int) Math.max(0, Math.min(bucket, starts.length - 1));
+    }
+}